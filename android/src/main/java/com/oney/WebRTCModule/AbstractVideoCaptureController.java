@@ -93,6 +93,21 @@ public abstract class AbstractVideoCaptureController {
         }
     }
 
+    /**
+     * Changes the format the capturer captures in, without changing the
+     * target (requested) one. Used to adapt the capture to the load.
+     */
+    public void changeCaptureFormat(int width, int height, int fps) {
+        if (videoCapturer == null) {
+            return;
+        }
+
+        videoCapturer.changeCaptureFormat(width, height, fps);
+        actualWidth = width;
+        actualHeight = height;
+        actualFps = fps;
+    }
+
     public void applyConstraints(ReadableMap constraints, @Nullable Consumer<Exception> onFinishedCallback) {
         if (onFinishedCallback != null) {
             onFinishedCallback.accept(new UnsupportedOperationException("This video track does not support applyConstraints."));
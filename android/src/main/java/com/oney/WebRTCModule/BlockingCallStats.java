@@ -0,0 +1,64 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of how long the JS thread was blocked waiting on the
+ * synchronous (blocking) methods of {@link WebRTCModule}.
+ */
+class BlockingCallStats {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Calls blocking the JS thread for longer than this many milliseconds are
+     * logged.
+     */
+    private static final long SLOW_CALL_THRESHOLD = 50;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    synchronized void record(String methodName, long durationNs) {
+        Entry entry = entries.get(methodName);
+        if (entry == null) {
+            entry = new Entry();
+            entries.put(methodName, entry);
+        }
+
+        entry.count++;
+        entry.totalNs += durationNs;
+        entry.maxNs = Math.max(entry.maxNs, durationNs);
+
+        long durationMs = TimeUnit.NANOSECONDS.toMillis(durationNs);
+        if (durationMs > SLOW_CALL_THRESHOLD) {
+            Log.w(TAG, methodName + "() blocked the JS thread for " + durationMs + "ms");
+        }
+    }
+
+    synchronized WritableMap toWritableMap() {
+        WritableMap result = Arguments.createMap();
+
+        for (Map.Entry<String, Entry> e : entries.entrySet()) {
+            Entry entry = e.getValue();
+            WritableMap map = Arguments.createMap();
+            map.putInt("count", entry.count);
+            map.putDouble("totalMs", entry.totalNs / 1e6);
+            map.putDouble("maxMs", entry.maxNs / 1e6);
+            result.putMap(e.getKey(), map);
+        }
+
+        return result;
+    }
+
+    private static class Entry {
+        int count;
+        long totalNs;
+        long maxNs;
+    }
+}
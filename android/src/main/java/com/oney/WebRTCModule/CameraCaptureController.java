@@ -1,7 +1,7 @@
 package com.oney.WebRTCModule;
 
 import android.content.Context;
-import android.hardware.camera2.CameraManager;
+import android.os.SystemClock;
 import android.util.Log;
 import android.util.Pair;
 import androidx.annotation.Nullable;
@@ -10,10 +10,6 @@ import androidx.core.util.Consumer;
 import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.WritableMap;
 
-import org.webrtc.Camera1Capturer;
-import org.webrtc.Camera1Helper;
-import org.webrtc.Camera2Capturer;
-import org.webrtc.Camera2Helper;
 import org.webrtc.CameraEnumerator;
 import org.webrtc.CameraVideoCapturer;
 import org.webrtc.Size;
@@ -39,6 +35,7 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
 
     private final Context context;
     private final CameraEnumerator cameraEnumerator;
+    private final CameraDeviceCache cameraDevices;
     private ReadableMap constraints;
 
     /**
@@ -51,16 +48,21 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
         public void onCameraOpening(String cameraName) {
             super.onCameraOpening(cameraName);
             int cameraIndex = findCameraIndex(cameraName);
-            updateActualSize(cameraIndex, cameraName, videoCapturer);
+            updateActualSize(cameraName);
             CameraCaptureController.this.currentDeviceId = cameraIndex == -1 ? null : String.valueOf(cameraIndex);
         }
     };
 
     public CameraCaptureController(Context context, CameraEnumerator cameraEnumerator, ReadableMap constraints) {
+        this(context, new CameraDeviceCache(cameraEnumerator), constraints);
+    }
+
+    CameraCaptureController(Context context, CameraDeviceCache cameraDevices, ReadableMap constraints) {
         super(constraints.getInt("width"), constraints.getInt("height"), constraints.getInt("frameRate"));
 
         this.context = context;
-        this.cameraEnumerator = cameraEnumerator;
+        this.cameraEnumerator = cameraDevices.getCameraEnumerator();
+        this.cameraDevices = cameraDevices;
         this.constraints = constraints;
     }
 
@@ -71,7 +73,7 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
     }
 
     private int findCameraIndex(String cameraName) {
-        String[] deviceNames = cameraEnumerator.getDeviceNames();
+        String[] deviceNames = cameraDevices.getDeviceNames();
         for (int i = 0; i < deviceNames.length; i++) {
             if (Objects.equals(deviceNames[i], cameraName)) {
                 return i;
@@ -112,7 +114,7 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
         }
 
         // Find target camera to switch to.
-        String[] deviceNames = cameraEnumerator.getDeviceNames();
+        String[] deviceNames = cameraDevices.getDeviceNames();
         final String deviceId = ReactBridgeUtil.getMapStrValue(constraints, "deviceId");
         final String facingMode = ReactBridgeUtil.getMapStrValue(constraints, "facingMode");
         int cameraIndex = -1;
@@ -135,7 +137,7 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
             final boolean isFrontFacing = facingMode == null || facingMode.equals("user");
             for (String name : deviceNames) {
                 cameraIndex++;
-                if (cameraEnumerator.isFrontFacing(name) == isFrontFacing) {
+                if (cameraDevices.isFrontFacing(name) == isFrontFacing) {
                     cameraName = name;
                     break;
                 }
@@ -150,7 +152,6 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
         }
         
         // For lambda reference
-        final int finalCameraIndex = cameraIndex;
         final String finalCameraName = cameraName;
         boolean shouldSwitchCamera = false;
         try {
@@ -167,7 +168,7 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
             if (targetWidth != oldTargetWidth ||
                     targetHeight != oldTargetHeight ||
                     targetFps != oldTargetFps) {
-                updateActualSize(finalCameraIndex, finalCameraName, videoCapturer);
+                updateActualSize(finalCameraName);
                 capturer.changeCaptureFormat(targetWidth, targetHeight, targetFps);
             }
             if (onFinishedCallback != null) {
@@ -176,9 +177,13 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
         };
 
         if (shouldSwitchCamera) {
+            long switchStartTime = SystemClock.elapsedRealtime();
             capturer.switchCamera(new CameraVideoCapturer.CameraSwitchHandler() {
                 @Override
                 public void onCameraSwitchDone(boolean isFrontCamera) {
+                    Log.d(TAG,
+                            "Switched to camera " + finalCameraName + " in "
+                                    + (SystemClock.elapsedRealtime() - switchStartTime) + "ms");
                     CameraCaptureController.this.isFrontFacing = isFrontCamera;
                     changeFormatIfNeededAndFinish.run();
                 }
@@ -198,6 +203,27 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
         }
     }
 
+    @Override
+    public void changeCaptureFormat(int width, int height, int fps) {
+        if (videoCapturer == null) {
+            return;
+        }
+
+        ((CameraVideoCapturer) videoCapturer).changeCaptureFormat(width, height, fps);
+        actualFps = fps;
+
+        String cameraName = null;
+        try {
+            cameraName = cameraDevices.getDeviceNames()[Integer.parseInt(currentDeviceId)];
+        } catch (Exception e) {
+            Log.d(TAG, "Couldn't find the current camera, device id: " + currentDeviceId);
+        }
+
+        Size actualSize = cameraName == null ? null : cameraDevices.findClosestCaptureSize(cameraName, width, height);
+        actualWidth = actualSize != null ? actualSize.width : width;
+        actualHeight = actualSize != null ? actualSize.height : height;
+    }
+
     @Override
     protected VideoCapturer createVideoCapturer() {
         String deviceId = ReactBridgeUtil.getMapStrValue(this.constraints, "deviceId");
@@ -208,20 +234,14 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
             return null;
         }
 
-        updateActualSize(result.cameraIndex, result.cameraName, result.videoCapturer);
+        updateActualSize(result.cameraName);
 
         return result.videoCapturer;
     }
 
-    private void updateActualSize(int cameraIndex, String cameraName, VideoCapturer videoCapturer) {
+    private void updateActualSize(String cameraName) {
         // Find actual capture format.
-        Size actualSize = null;
-        if (videoCapturer instanceof Camera1Capturer) {
-            actualSize = Camera1Helper.findClosestCaptureFormat(cameraIndex, targetWidth, targetHeight);
-        } else if (videoCapturer instanceof Camera2Capturer) {
-            CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
-            actualSize = Camera2Helper.findClosestCaptureFormat(cameraManager, cameraName, targetWidth, targetHeight);
-        }
+        Size actualSize = cameraDevices.findClosestCaptureSize(cameraName, targetWidth, targetHeight);
 
         if (actualSize != null) {
             actualWidth = actualSize.width;
@@ -244,7 +264,7 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
      */
     @Nullable
     private CreateCapturerResult createVideoCapturer(String deviceId, String facingMode) {
-        String[] deviceNames = cameraEnumerator.getDeviceNames();
+        String[] deviceNames = cameraDevices.getDeviceNames();
         List<String> failedDevices = new ArrayList<>();
 
         String cameraName = null;
@@ -262,7 +282,7 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
             String message = "Create user-specified camera " + cameraName;
             if (videoCapturer != null) {
                 Log.d(TAG, message + " succeeded");
-                this.isFrontFacing = cameraEnumerator.isFrontFacing(cameraName);
+                this.isFrontFacing = cameraDevices.isFrontFacing(cameraName);
                 this.currentDeviceId = String.valueOf(cameraIndex);
                 return new CreateCapturerResult(cameraIndex, cameraName, videoCapturer);
             } else {
@@ -280,14 +300,14 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
             if (failedDevices.contains(name)) {
                 continue;
             }
-            if (cameraEnumerator.isFrontFacing(name) != isFrontFacing) {
+            if (cameraDevices.isFrontFacing(name) != isFrontFacing) {
                 continue;
             }
             VideoCapturer videoCapturer = cameraEnumerator.createCapturer(name, cameraEventsHandler);
             String message = "Create camera " + name;
             if (videoCapturer != null) {
                 Log.d(TAG, message + " succeeded");
-                this.isFrontFacing = cameraEnumerator.isFrontFacing(name);
+                this.isFrontFacing = cameraDevices.isFrontFacing(name);
                 this.currentDeviceId = String.valueOf(cameraIndex);
                 return new CreateCapturerResult(cameraIndex, name, videoCapturer);
             } else {
@@ -305,7 +325,7 @@ public class CameraCaptureController extends AbstractVideoCaptureController {
                 String message = "Create fallback camera " + name;
                 if (videoCapturer != null) {
                     Log.d(TAG, message + " succeeded");
-                    this.isFrontFacing = cameraEnumerator.isFrontFacing(name);
+                    this.isFrontFacing = cameraDevices.isFrontFacing(name);
                     this.currentDeviceId = String.valueOf(cameraIndex);
                     return new CreateCapturerResult(cameraIndex, name, videoCapturer);
                 } else {
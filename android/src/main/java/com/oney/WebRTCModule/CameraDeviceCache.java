@@ -0,0 +1,243 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraManager;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.CameraEnumerationAndroid;
+import org.webrtc.CameraEnumerationAndroid.CaptureFormat;
+import org.webrtc.CameraEnumerator;
+import org.webrtc.Size;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Caches what a {@link CameraEnumerator} knows about the cameras: their names,
+ * facing and supported capture formats. Querying those goes to the camera
+ * service (or, with the Camera1 API, opens the cameras) every time, which adds
+ * up to hundreds of milliseconds when picking or switching cameras. The
+ * cameras are resolved once, either lazily or upfront with {@link #prewarm},
+ * and resolved again when one is connected or disconnected (e.g. a USB
+ * camera), if {@link #watchAvailability} was called. The formats of each camera are kept
+ * as a {@link CaptureFormatIndex}, which also remembers the capture sizes
+ * picked for the requested ones.
+ */
+class CameraDeviceCache {
+    private static final String TAG = WebRTCModule.TAG;
+
+    private final CameraEnumerator cameraEnumerator;
+
+    private String[] deviceNames;
+    private final Map<String, Boolean> frontFacing = new HashMap<>();
+    private final Map<String, CaptureFormatIndex> formatIndexes = new HashMap<>();
+
+    CameraDeviceCache(CameraEnumerator cameraEnumerator) {
+        this.cameraEnumerator = cameraEnumerator;
+    }
+
+    CameraEnumerator getCameraEnumerator() {
+        return cameraEnumerator;
+    }
+
+    /**
+     * Drops what's cached about the cameras which are connected or
+     * disconnected from now on. It only applies to the Camera2 API, the
+     * Camera1 one doesn't support external cameras.
+     */
+    void watchAvailability(Context context) {
+        CameraManager cameraManager = (CameraManager) context.getSystemService(Context.CAMERA_SERVICE);
+        if (cameraManager == null) {
+            return;
+        }
+
+        // Availability also changes when a camera is opened or closed, so
+        // only the changes of the list of cameras are acted upon.
+        cameraManager.registerAvailabilityCallback(new CameraManager.AvailabilityCallback() {
+            @Override
+            public void onCameraAvailable(String cameraId) {
+                synchronized (CameraDeviceCache.this) {
+                    if (deviceNames != null && !Arrays.asList(deviceNames).contains(cameraId)) {
+                        invalidate(cameraId);
+                    }
+                }
+            }
+
+            @Override
+            public void onCameraUnavailable(String cameraId) {
+                try {
+                    if (Arrays.asList(cameraManager.getCameraIdList()).contains(cameraId)) {
+                        return;
+                    }
+                } catch (CameraAccessException e) {
+                    Log.d(TAG, "CameraDeviceCache: failed to get the cameras", e);
+                }
+
+                synchronized (CameraDeviceCache.this) {
+                    invalidate(cameraId);
+                }
+            }
+        }, new Handler(Looper.getMainLooper()));
+    }
+
+    /**
+     * Drops the names of the cameras and what's cached about the given one,
+     * which was connected or disconnected. Must be called with this locked.
+     */
+    private void invalidate(String deviceName) {
+        Log.d(TAG, "CameraDeviceCache: camera " + deviceName + " was connected or disconnected");
+
+        deviceNames = null;
+        frontFacing.remove(deviceName);
+        formatIndexes.remove(deviceName);
+    }
+
+    /**
+     * Resolves the names, facing and supported formats of all the cameras.
+     */
+    void prewarm() {
+        long start = System.nanoTime();
+
+        for (String deviceName : getDeviceNames()) {
+            try {
+                isFrontFacing(deviceName);
+            } catch (Exception e) {
+                // This can throw an exception when using the Camera 1 API.
+                Log.d(TAG, "CameraDeviceCache: failed to check the facing mode of " + deviceName);
+            }
+            getFormatIndex(deviceName);
+        }
+
+        Log.d(TAG, "CameraDeviceCache: prewarmed in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    /**
+     * Gets the names of the cameras, in the order of
+     * {@link CameraEnumerator#getDeviceNames}. The array is shared, it must
+     * not be modified.
+     */
+    synchronized String[] getDeviceNames() {
+        if (deviceNames == null) {
+            deviceNames = cameraEnumerator.getDeviceNames();
+        }
+
+        return deviceNames;
+    }
+
+    /**
+     * See {@link CameraEnumerator#isFrontFacing}. Failures are not cached, the
+     * exception is thrown again on the next call.
+     */
+    synchronized boolean isFrontFacing(String deviceName) {
+        Boolean result = frontFacing.get(deviceName);
+
+        if (result == null) {
+            result = cameraEnumerator.isFrontFacing(deviceName);
+            frontFacing.put(deviceName, result);
+        }
+
+        return result;
+    }
+
+    /**
+     * See {@link CameraEnumerator#getSupportedFormats}.
+     *
+     * @return the formats, or an empty list if they couldn't be queried.
+     */
+    List<CaptureFormat> getSupportedFormats(String deviceName) {
+        return getFormatIndex(deviceName).formats;
+    }
+
+    /**
+     * Finds the capture size closest to the given one the camera supports, see
+     * {@link CameraEnumerationAndroid#getClosestSupportedSize}.
+     *
+     * @return the size, or {@code null} if the formats of the camera are not
+     * known.
+     */
+    @Nullable
+    Size findClosestCaptureSize(String deviceName, int width, int height) {
+        return getFormatIndex(deviceName).findClosestSize(width, height);
+    }
+
+    synchronized CaptureFormatIndex getFormatIndex(String deviceName) {
+        CaptureFormatIndex index = formatIndexes.get(deviceName);
+
+        if (index == null) {
+            long start = System.nanoTime();
+
+            List<CaptureFormat> formats = null;
+            try {
+                formats = cameraEnumerator.getSupportedFormats(deviceName);
+            } catch (Exception e) {
+                Log.d(TAG, "CameraDeviceCache: failed to get the formats of " + deviceName, e);
+            }
+            index = new CaptureFormatIndex(formats == null ? Collections.emptyList() : formats);
+            formatIndexes.put(deviceName, index);
+
+            Log.d(TAG,
+                    "CameraDeviceCache: indexed " + index.formats.size() + " formats of " + deviceName + " in "
+                            + (System.nanoTime() - start) / 1000 + "us");
+        }
+
+        return index;
+    }
+
+    /**
+     * The capture formats supported by a camera, along with the distinct sizes
+     * and frame rate ranges among them.
+     */
+    static final class CaptureFormatIndex {
+        final List<CaptureFormat> formats;
+        final List<Size> sizes;
+        final List<CaptureFormat.FramerateRange> framerates;
+
+        /**
+         * The sizes returned by {@link #findClosestSize}, mapped by the
+         * requested size.
+         */
+        private final Map<Long, Size> closestSizes = new HashMap<>();
+
+        CaptureFormatIndex(List<CaptureFormat> formats) {
+            Set<Size> sizes = new LinkedHashSet<>();
+            Set<CaptureFormat.FramerateRange> framerates = new LinkedHashSet<>();
+
+            for (CaptureFormat format : formats) {
+                sizes.add(new Size(format.width, format.height));
+                framerates.add(format.framerate);
+            }
+
+            this.formats = Collections.unmodifiableList(new ArrayList<>(formats));
+            this.sizes = Collections.unmodifiableList(new ArrayList<>(sizes));
+            this.framerates = Collections.unmodifiableList(new ArrayList<>(framerates));
+        }
+
+        @Nullable
+        synchronized Size findClosestSize(int width, int height) {
+            if (sizes.isEmpty()) {
+                return null;
+            }
+
+            long key = ((long) width << 32) | (height & 0xffffffffL);
+            Size size = closestSizes.get(key);
+
+            if (size == null) {
+                size = CameraEnumerationAndroid.getClosestSupportedSize(sizes, width, height);
+                closestSizes.put(key, size);
+            }
+
+            return size;
+        }
+    }
+}
@@ -5,18 +5,60 @@ import android.util.Base64;
 import androidx.annotation.Nullable;
 
 import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
 
 import org.webrtc.DataChannel;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 
 class DataChannelWrapper implements DataChannel.Observer {
+    /**
+     * Largest binary message for which {@link #scratch} is kept around, so a
+     * single big message doesn't pin a big buffer for the channel's lifetime.
+     */
+    private static final int MAX_SCRATCH_SIZE = 64 * 1024;
+
     private final String reactTag;
     private final DataChannel mDataChannel;
     private final int peerConnectionId;
     private final WebRTCModule webRTCModule;
 
+    /**
+     * Buffer used to copy binary messages out of the direct buffers WebRTC
+     * delivers them in. Messages for a given channel are delivered one at a
+     * time on the signaling thread, so it's safe to reuse it.
+     */
+    private byte[] scratch;
+
+    /**
+     * The message batching settings of this channel, or {@code null} if every
+     * message is to be delivered as its own event (the default).
+     */
+    private MessageBatching batching;
+
+    /**
+     * Messages received while batching is enabled, which have not been
+     * delivered yet, and their accounting. Guarded by {@link #batchLock}.
+     */
+    private WritableArray pendingMessages;
+    private int pendingMessagesCount;
+    private long pendingMessagesSize;
+    private ScheduledFuture<?> pendingFlush;
+
+    /**
+     * Whether the observer was unregistered, after which nothing is queued
+     * anymore. Guarded by {@link #batchLock}.
+     */
+    private boolean disposed;
+
+    private final Object batchLock = new Object();
+
     DataChannelWrapper(WebRTCModule webRTCModule, int peerConnectionId, String reactTag, DataChannel dataChannel) {
         this.webRTCModule = webRTCModule;
         this.peerConnectionId = peerConnectionId;
@@ -47,8 +89,51 @@ class DataChannelWrapper implements DataChannel.Observer {
         return null;
     }
 
+    /**
+     * Enables or disables batched message delivery for this channel. While
+     * enabled, received messages are queued and delivered to JS as a single
+     * {@code dataChannelReceiveMessages} event once {@code maxMessages} or
+     * {@code maxBytes} is reached, or {@code interval} milliseconds after the
+     * first queued message, whichever happens first.
+     *
+     * @param options the batching options or {@code null} to deliver every
+     * message as its own event.
+     */
+    void setMessageBatching(@Nullable ReadableMap options) {
+        synchronized (batchLock) {
+            // Don't let the queued messages wait for the new settings.
+            flushPendingMessages();
+            batching = options == null ? null : new MessageBatching(options);
+        }
+    }
+
+    /**
+     * Drops the queued messages and cancels their delivery, once the observer
+     * is unregistered. JS is done with the channel.
+     */
+    void dispose() {
+        synchronized (batchLock) {
+            disposed = true;
+
+            if (pendingFlush != null) {
+                pendingFlush.cancel(false);
+                pendingFlush = null;
+            }
+
+            pendingMessages = null;
+            pendingMessagesCount = 0;
+            pendingMessagesSize = 0;
+        }
+    }
+
     @Override
     public void onBufferedAmountChange(long amount) {
+        // Deliver whatever was queued before this so that the events for the
+        // channel are seen by JS in the order they happened.
+        synchronized (batchLock) {
+            flushPendingMessages();
+        }
+
         WritableMap params = Arguments.createMap();
         params.putString("reactTag", reactTag);
         params.putInt("peerConnectionId", peerConnectionId);
@@ -59,35 +144,120 @@ class DataChannelWrapper implements DataChannel.Observer {
 
     @Override
     public void onMessage(DataChannel.Buffer buffer) {
+        int size = buffer.data.remaining();
+        String type;
+        String data;
+        if (buffer.binary) {
+            type = "binary";
+            data = encodeBinary(buffer.data);
+        } else {
+            type = "text";
+            // Decode straight from the (direct) buffer, there is no need for
+            // an intermediate byte array.
+            data = StandardCharsets.UTF_8.decode(buffer.data).toString();
+        }
+
+        synchronized (batchLock) {
+            if (disposed) {
+                return;
+            }
+
+            if (batching == null) {
+                WritableMap params = Arguments.createMap();
+                params.putString("reactTag", reactTag);
+                params.putInt("peerConnectionId", peerConnectionId);
+                params.putString("type", type);
+                params.putString("data", data);
+
+                webRTCModule.sendEvent("dataChannelReceiveMessage", params);
+                return;
+            }
+
+            WritableMap message = Arguments.createMap();
+            message.putString("type", type);
+            message.putString("data", data);
+
+            if (pendingMessages == null) {
+                pendingMessages = Arguments.createArray();
+            }
+            pendingMessages.pushMap(message);
+            pendingMessagesCount++;
+            pendingMessagesSize += size;
+
+            if (pendingMessagesCount >= batching.maxMessages || pendingMessagesSize >= batching.maxBytes) {
+                flushPendingMessages();
+            } else if (pendingFlush == null) {
+                pendingFlush = ThreadUtils.schedule(() -> {
+                    synchronized (batchLock) {
+                        pendingFlush = null;
+                        flushPendingMessages();
+                    }
+                }, batching.interval, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    /**
+     * Delivers the queued messages, if any, as a single event. Must be called
+     * with {@link #batchLock} held.
+     */
+    private void flushPendingMessages() {
+        if (pendingFlush != null) {
+            pendingFlush.cancel(false);
+            pendingFlush = null;
+        }
+
+        if (pendingMessages == null) {
+            return;
+        }
+
         WritableMap params = Arguments.createMap();
         params.putString("reactTag", reactTag);
         params.putInt("peerConnectionId", peerConnectionId);
+        params.putArray("messages", pendingMessages);
 
-        byte[] bytes;
-        if (buffer.data.hasArray()) {
-            bytes = buffer.data.array();
-        } else {
-            bytes = new byte[buffer.data.remaining()];
-            buffer.data.get(bytes);
+        pendingMessages = null;
+        pendingMessagesCount = 0;
+        pendingMessagesSize = 0;
+
+        webRTCModule.sendEvent("dataChannelReceiveMessages", params);
+    }
+
+    /**
+     * Base64-encodes the remaining bytes of the given buffer. Buffers backed by
+     * an array are encoded in place, direct buffers (which is what WebRTC hands
+     * us) are copied into {@link #scratch}, which is reused across messages,
+     * unless they are too big for it.
+     */
+    private String encodeBinary(ByteBuffer data) {
+        int length = data.remaining();
+
+        if (data.hasArray()) {
+            return Base64.encodeToString(data.array(), data.arrayOffset() + data.position(), length, Base64.NO_WRAP);
         }
 
-        String type;
-        String data;
-        if (buffer.binary) {
-            type = "binary";
-            data = Base64.encodeToString(bytes, Base64.NO_WRAP);
+        byte[] bytes;
+        if (length > MAX_SCRATCH_SIZE) {
+            bytes = new byte[length];
         } else {
-            type = "text";
-            data = new String(bytes, StandardCharsets.UTF_8);
+            if (scratch == null || scratch.length < length) {
+                scratch = new byte[Math.min(Math.max(length, 1024), MAX_SCRATCH_SIZE)];
+            }
+            bytes = scratch;
         }
-        params.putString("type", type);
-        params.putString("data", data);
+        data.get(bytes, 0, length);
 
-        webRTCModule.sendEvent("dataChannelReceiveMessage", params);
+        return Base64.encodeToString(bytes, 0, length, Base64.NO_WRAP);
     }
 
     @Override
     public void onStateChange() {
+        // Messages which arrived before the state change (e.g. before the
+        // channel was closed) must be delivered first.
+        synchronized (batchLock) {
+            flushPendingMessages();
+        }
+
         WritableMap params = Arguments.createMap();
         params.putString("reactTag", reactTag);
         params.putInt("peerConnectionId", peerConnectionId);
@@ -96,4 +266,34 @@ class DataChannelWrapper implements DataChannel.Observer {
 
         webRTCModule.sendEvent("dataChannelStateChanged", params);
     }
+
+    /**
+     * Settings for batched message delivery, see {@link #setMessageBatching}.
+     */
+    private static class MessageBatching {
+        private static final int DEFAULT_MAX_MESSAGES = 100;
+        private static final int DEFAULT_MAX_BYTES = 256 * 1024;
+        // Roughly one frame.
+        private static final int DEFAULT_INTERVAL = 16;
+
+        final int maxMessages;
+        final int maxBytes;
+        final int interval;
+
+        MessageBatching(ReadableMap options) {
+            maxMessages = getPositiveInt(options, "maxMessages", DEFAULT_MAX_MESSAGES);
+            maxBytes = getPositiveInt(options, "maxBytes", DEFAULT_MAX_BYTES);
+            interval = getPositiveInt(options, "interval", DEFAULT_INTERVAL);
+        }
+
+        private static int getPositiveInt(ReadableMap options, String key, int defaultValue) {
+            if (options.hasKey(key) && options.getType(key) == ReadableType.Number) {
+                int value = options.getInt(key);
+                if (value > 0) {
+                    return value;
+                }
+            }
+            return defaultValue;
+        }
+    }
 }
@@ -4,6 +4,7 @@ import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
 import android.media.projection.MediaProjectionManager;
+import android.os.SystemClock;
 import android.util.DisplayMetrics;
 import android.util.Log;
 import androidx.core.util.Consumer;
@@ -18,6 +19,7 @@ import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.bridge.UiThreadUtil;
 import com.facebook.react.bridge.WritableArray;
 import com.facebook.react.bridge.WritableMap;
+import com.oney.WebRTCModule.videoEffects.AsyncVideoEffectProcessor;
 import com.oney.WebRTCModule.videoEffects.ProcessorProvider;
 import com.oney.WebRTCModule.videoEffects.VideoEffectProcessor;
 import com.oney.WebRTCModule.videoEffects.VideoFrameProcessor;
@@ -25,9 +27,11 @@ import com.oney.WebRTCModule.videoEffects.VideoFrameProcessor;
 import org.webrtc.*;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The implementation of {@code getUserMedia} extracted into a separate file in
@@ -41,18 +45,24 @@ class GetUserMediaImpl {
 
     private static final int PERMISSION_REQUEST_CODE = (int) (Math.random() * Short.MAX_VALUE);
 
-    private CameraEnumerator cameraEnumerator;
+    private CameraDeviceCache cameraDevices;
     private final ReactApplicationContext reactContext;
 
     /**
      * The application/library-specific private members of local
      * {@link MediaStreamTrack}s created by {@code GetUserMediaImpl} mapped by
-     * track ID.
+     * track ID. They are also looked up from the PeerConnection executors.
      */
-    private final Map<String, TrackPrivate> tracks = new HashMap<>();
+    private final Map<String, TrackPrivate> tracks = new ConcurrentHashMap<>();
 
     private final WebRTCModule webRTCModule;
 
+    /**
+     * The {@link SurfaceTextureHelper}s of the video tracks are leased from
+     * here and returned once the tracks are disposed.
+     */
+    private final SurfaceTextureHelperPool surfaceTextureHelperPool = new SurfaceTextureHelperPool();
+
     private Promise displayMediaPromise;
     private Intent mediaProjectionPermissionResultData;
 
@@ -99,7 +109,9 @@ class GetUserMediaImpl {
         AudioTrack track = pcFactory.createAudioTrack(id, audioSource);
 
         // surfaceTextureHelper is initialized for videoTrack only, so its null here.
-        tracks.put(id, new TrackPrivate(track, audioSource, /* videoCapturer */ null, /* surfaceTextureHelper */ null));
+        tracks.put(id,
+                new TrackPrivate(track, audioSource, /* videoCapturer */ null, /* surfaceTextureHelper */ null,
+                        /* surfaceTextureHelperPool */ null));
 
         return track;
     }
@@ -119,30 +131,48 @@ class GetUserMediaImpl {
         peerConstraints.mandatory.addAll(valid);
     }
 
-    private CameraEnumerator getCameraEnumerator() {
-        if (cameraEnumerator == null) {
+    private synchronized CameraDeviceCache getCameraDevices() {
+        if (cameraDevices == null) {
             if (Camera2Enumerator.isSupported(reactContext)) {
                 Log.d(TAG, "Creating camera enumerator using the Camera2 API");
-                cameraEnumerator = new Camera2Enumerator(reactContext);
+                cameraDevices = new CameraDeviceCache(new Camera2Enumerator(reactContext));
+                cameraDevices.watchAvailability(reactContext);
             } else {
                 Log.d(TAG, "Creating camera enumerator using the Camera1 API");
-                cameraEnumerator = new Camera1Enumerator(false);
+                cameraDevices = new CameraDeviceCache(new Camera1Enumerator(false));
             }
         }
 
-        return cameraEnumerator;
+        return cameraDevices;
+    }
+
+    /**
+     * Gets everything ready for capturing from a camera ahead of
+     * {@code getUserMedia}: resolves the cameras and their formats, and warms
+     * up a {@link SurfaceTextureHelper}. The camera itself is not opened, since
+     * doing so would show the camera indicator and keep other apps from using
+     * it.
+     */
+    void prewarm() {
+        long start = SystemClock.elapsedRealtime();
+
+        getCameraDevices().prewarm();
+        surfaceTextureHelperPool.prewarm();
+
+        Log.d(TAG, "Prewarmed media devices in " + (SystemClock.elapsedRealtime() - start) + "ms");
     }
 
     ReadableArray enumerateDevices() {
         WritableArray array = Arguments.createArray();
-        String[] devices = getCameraEnumerator().getDeviceNames();
+        CameraDeviceCache cameraDevices = getCameraDevices();
+        String[] devices = cameraDevices.getDeviceNames();
 
         for (int i = 0; i < devices.length; ++i) {
             String deviceName = devices[i];
             boolean isFrontFacing;
             try {
                 // This can throw an exception when using the Camera 1 API.
-                isFrontFacing = getCameraEnumerator().isFrontFacing(deviceName);
+                isFrontFacing = cameraDevices.isFrontFacing(deviceName);
             } catch (Exception e) {
                 Log.e(TAG, "Failed to check the facing mode of camera");
                 continue;
@@ -172,6 +202,12 @@ class GetUserMediaImpl {
         return private_ == null ? null : private_.track;
     }
 
+    AbstractVideoCaptureController getVideoCaptureController(String trackId) {
+        TrackPrivate private_ = tracks.get(trackId);
+
+        return private_ == null ? null : private_.videoCaptureController;
+    }
+
     /**
      * Implements {@code getUserMedia}. Note that at this point constraints have
      * been normalized and permissions have been granted. The constraints only
@@ -193,7 +229,7 @@ class GetUserMediaImpl {
             Log.d(TAG, "getUserMedia(video): " + videoConstraintsMap);
 
             CameraCaptureController cameraCaptureController =
-                    new CameraCaptureController(reactContext.getCurrentActivity(), getCameraEnumerator(), videoConstraintsMap);
+                    new CameraCaptureController(reactContext.getCurrentActivity(), getCameraDevices(), videoConstraintsMap);
 
             videoTrack = createVideoTrack(cameraCaptureController);
         }
@@ -375,9 +411,11 @@ class GetUserMediaImpl {
             return null;
         }
 
+        long startTime = SystemClock.elapsedRealtime();
+
         PeerConnectionFactory pcFactory = webRTCModule.mFactory;
-        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
-        SurfaceTextureHelper surfaceTextureHelper = SurfaceTextureHelper.create("CaptureThread", eglContext);
+        boolean warm = surfaceTextureHelperPool.hasIdleHelpers();
+        SurfaceTextureHelper surfaceTextureHelper = surfaceTextureHelperPool.acquire();
 
         if (surfaceTextureHelper == null) {
             Log.d(TAG, "Error creating SurfaceTextureHelper");
@@ -390,12 +428,16 @@ class GetUserMediaImpl {
         videoCaptureController.setCapturerEventsListener(eventsEmitter);
 
         VideoSource videoSource = pcFactory.createVideoSource(videoCapturer.isScreencast());
-        videoCapturer.initialize(surfaceTextureHelper, reactContext, videoSource.getCapturerObserver());
+        videoCapturer.initialize(surfaceTextureHelper,
+                reactContext,
+                new FirstFrameObserver(videoSource.getCapturerObserver(), id, startTime, warm));
 
         VideoTrack track = pcFactory.createVideoTrack(id, videoSource);
 
         track.setEnabled(true);
-        tracks.put(id, new TrackPrivate(track, videoSource, videoCaptureController, surfaceTextureHelper));
+        tracks.put(id,
+                new TrackPrivate(
+                        track, videoSource, videoCaptureController, surfaceTextureHelper, surfaceTextureHelperPool));
 
         videoCaptureController.startCapture();
 
@@ -409,30 +451,123 @@ class GetUserMediaImpl {
      * @param name VideoEffectProcessor name
      */
     void setVideoEffect(String trackId, String name) {
+        setVideoEffects(trackId, name == null ? null : Collections.singletonList(name), false, 0);
+    }
+
+    /**
+     * Set a chain of video effects to the TrackPrivate corresponding to the trackId. The effects are
+     * applied in the given order, see VideoEffectProcessor.
+     * @param trackId TrackPrivate id
+     * @param names VideoEffectProcessor names, null or empty to remove all the effects
+     * @param async whether to apply the effects on a separate thread, see AsyncVideoEffectProcessor
+     * @param passthroughTimeout when async, time in milliseconds after which frames are passed
+     *                           through without effects, or 0
+     */
+    void setVideoEffects(String trackId, List<String> names, boolean async, long passthroughTimeout) {
         TrackPrivate track = tracks.get(trackId);
 
         if (track != null && track.videoCaptureController instanceof CameraCaptureController) {
             VideoSource videoSource = (VideoSource) track.mediaSource;
             SurfaceTextureHelper surfaceTextureHelper = track.surfaceTextureHelper;
 
-            if (name != null) {
-                VideoFrameProcessor videoFrameProcessor = ProcessorProvider.getProcessor(name);
+            if (names != null && !names.isEmpty()) {
+                List<VideoFrameProcessor> videoFrameProcessors = new ArrayList<>(names.size());
+
+                for (String name : names) {
+                    VideoFrameProcessor videoFrameProcessor = ProcessorProvider.acquireProcessor(trackId, name);
+
+                    if (videoFrameProcessor == null) {
+                        Log.e(TAG, "no videoFrameProcessor associated with the name " + name);
+                        for (VideoFrameProcessor acquired : videoFrameProcessors) {
+                            ProcessorProvider.releaseProcessor(acquired);
+                        }
+                        return;
+                    }
 
-                if (videoFrameProcessor == null) {
-                    Log.e(TAG, "no videoFrameProcessor associated with this name");
-                    return;
+                    videoFrameProcessors.add(videoFrameProcessor);
                 }
 
-                VideoEffectProcessor videoEffectProcessor =
-                        new VideoEffectProcessor(videoFrameProcessor, surfaceTextureHelper);
+                VideoEffectProcessor videoEffectProcessor = async
+                        ? new AsyncVideoEffectProcessor(videoFrameProcessors, surfaceTextureHelper, passthroughTimeout)
+                        : new VideoEffectProcessor(videoFrameProcessors, surfaceTextureHelper);
                 videoSource.setVideoProcessor(videoEffectProcessor);
+                track.setVideoEffectProcessor(videoEffectProcessor);
 
             } else {
                 videoSource.setVideoProcessor(null);
+                track.setVideoEffectProcessor(null);
             }
         }
     }
 
+    /**
+     * Gets the counters of the video effects of the given track.
+     * @param trackId TrackPrivate id
+     * @return the counters, or null if the track has no video effects.
+     */
+    WritableMap getVideoEffectStats(String trackId) {
+        TrackPrivate track = tracks.get(trackId);
+        VideoEffectProcessor videoEffectProcessor = track == null ? null : track.videoEffectProcessor;
+
+        if (videoEffectProcessor == null) {
+            return null;
+        }
+
+        long framesProcessed = videoEffectProcessor.getFramesProcessed();
+
+        WritableMap stats = Arguments.createMap();
+        stats.putDouble("framesProcessed", framesProcessed);
+        stats.putDouble("framesDropped", videoEffectProcessor.getFramesDropped());
+        stats.putDouble("framesPassedThrough", videoEffectProcessor.getFramesPassedThrough());
+        stats.putDouble("averageProcessingTimeMs",
+                framesProcessed == 0 ? 0 : videoEffectProcessor.getTotalProcessingTimeNs() / 1e6 / framesProcessed);
+        stats.putDouble("maxProcessingTimeMs", videoEffectProcessor.getMaxProcessingTimeNs() / 1e6);
+        return stats;
+    }
+
+    /**
+     * {@link CapturerObserver} which logs how long it took from the creation
+     * of a video track until its capturer delivered the first frame, and
+     * whether the capture pipeline was warm (prewarmed or reused) or cold.
+     */
+    private static class FirstFrameObserver implements CapturerObserver {
+        private final CapturerObserver observer;
+        private final String trackId;
+        private final long startTime;
+        private final boolean warm;
+        private volatile boolean frameCaptured;
+
+        FirstFrameObserver(CapturerObserver observer, String trackId, long startTime, boolean warm) {
+            this.observer = observer;
+            this.trackId = trackId;
+            this.startTime = startTime;
+            this.warm = warm;
+        }
+
+        @Override
+        public void onCapturerStarted(boolean success) {
+            observer.onCapturerStarted(success);
+        }
+
+        @Override
+        public void onCapturerStopped() {
+            observer.onCapturerStopped();
+        }
+
+        @Override
+        public void onFrameCaptured(VideoFrame frame) {
+            if (!frameCaptured) {
+                frameCaptured = true;
+                Log.d(TAG,
+                        "First frame of video track " + trackId + " captured after "
+                                + (SystemClock.elapsedRealtime() - startTime) + "ms (" + (warm ? "warm" : "cold")
+                                + ")");
+            }
+
+            observer.onFrameCaptured(frame);
+        }
+    }
+
     /**
      * Application/library-specific private members of local
      * {@code MediaStreamTrack}s created by {@code GetUserMediaImpl}.
@@ -453,6 +588,16 @@ class GetUserMediaImpl {
 
         private final SurfaceTextureHelper surfaceTextureHelper;
 
+        /**
+         * The pool {@link #surfaceTextureHelper} was leased from, if any.
+         */
+        private final SurfaceTextureHelperPool surfaceTextureHelperPool;
+
+        /**
+         * The {@code VideoEffectProcessor} set on {@link #mediaSource}, if any.
+         */
+        private volatile VideoEffectProcessor videoEffectProcessor;
+
         /**
          * Whether this object has been disposed or not.
          */
@@ -467,21 +612,46 @@ class GetUserMediaImpl {
          * @param videoCaptureController the {@code AbstractVideoCaptureController} from which the
          *                               specified {@code mediaSource} was created if the specified
          *                               {@code track} is a {@link VideoTrack}
+         * @param surfaceTextureHelper     the {@code SurfaceTextureHelper} the capturer of the
+         *                               specified {@code track} was initialized with, if any
+         * @param surfaceTextureHelperPool the pool the specified {@code surfaceTextureHelper} was
+         *                               leased from, if any
          */
         public TrackPrivate(MediaStreamTrack track, MediaSource mediaSource,
-                AbstractVideoCaptureController videoCaptureController, SurfaceTextureHelper surfaceTextureHelper) {
+                AbstractVideoCaptureController videoCaptureController, SurfaceTextureHelper surfaceTextureHelper,
+                SurfaceTextureHelperPool surfaceTextureHelperPool) {
             this.track = track;
             this.mediaSource = mediaSource;
             this.videoCaptureController = videoCaptureController;
             this.surfaceTextureHelper = surfaceTextureHelper;
+            this.surfaceTextureHelperPool = surfaceTextureHelperPool;
             this.disposed = false;
         }
 
+        /**
+         * Replaces the {@code VideoEffectProcessor} of this track, disposing the previous one and
+         * giving its processors back to the {@code ProcessorProvider}. It must have been set on
+         * {@link #mediaSource} already.
+         */
+        void setVideoEffectProcessor(VideoEffectProcessor videoEffectProcessor) {
+            VideoEffectProcessor previous = this.videoEffectProcessor;
+            this.videoEffectProcessor = videoEffectProcessor;
+
+            if (previous != null) {
+                previous.dispose();
+                for (VideoFrameProcessor videoFrameProcessor : previous.getVideoFrameProcessors()) {
+                    ProcessorProvider.releaseProcessor(videoFrameProcessor);
+                }
+            }
+        }
+
         public void dispose() {
             if (!disposed) {
+                boolean capturerDisposed = false;
                 if (videoCaptureController != null) {
                     if (videoCaptureController.stopCapture()) {
                         videoCaptureController.dispose();
+                        capturerDisposed = true;
                     }
                 }
 
@@ -489,12 +659,23 @@ class GetUserMediaImpl {
                  * As per webrtc library documentation - The caller still has ownership of {@code
                  * surfaceTextureHelper} and is responsible for making sure surfaceTextureHelper.dispose() is
                  * called. This also means that the caller can reuse the SurfaceTextureHelper to initialize a new
-                 * VideoCapturer once the previous VideoCapturer has been disposed. */
+                 * VideoCapturer once the previous VideoCapturer has been disposed. Hence it goes back to the pool
+                 * unless the capturer could not be stopped, in which case it may still be in use. */
 
                 if (surfaceTextureHelper != null) {
-                    surfaceTextureHelper.stopListening();
-                    surfaceTextureHelper.dispose();
+                    if (capturerDisposed && surfaceTextureHelperPool != null) {
+                        surfaceTextureHelperPool.release(surfaceTextureHelper);
+                    } else {
+                        surfaceTextureHelper.stopListening();
+                        surfaceTextureHelper.dispose();
+                    }
+                }
+
+                if (videoEffectProcessor != null) {
+                    ((VideoSource) mediaSource).setVideoProcessor(null);
+                    setVideoEffectProcessor(null);
                 }
+                ProcessorProvider.releaseProcessors(track.id());
 
                 mediaSource.dispose();
                 track.dispose();
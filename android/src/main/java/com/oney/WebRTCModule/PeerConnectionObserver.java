@@ -16,6 +16,7 @@ import org.webrtc.IceCandidate;
 import org.webrtc.MediaStream;
 import org.webrtc.MediaStreamTrack;
 import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
 import org.webrtc.RTCStatsReport;
 import org.webrtc.RtpReceiver;
 import org.webrtc.RtpSender;
@@ -26,9 +27,10 @@ import org.webrtc.VideoTrack;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
 
 class PeerConnectionObserver implements PeerConnection.Observer {
     private final static String TAG = WebRTCModule.TAG;
@@ -44,13 +46,32 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     private final VideoTrackAdapter videoTrackAdapters;
     private final WebRTCModule webRTCModule;
 
+    /**
+     * The stats of the last report produced by {@link #getStatsDelta}, mapped
+     * by stats ID, against which the next report is diffed.
+     */
+    private volatile Map<String, RTCStats> statsSnapshot;
+
+    /**
+     * The transceivers of the PeerConnection, as of the last call to
+     * {@link PeerConnection#getTransceivers()}, mapped by sender ID and by
+     * receiver ID. Every call to it disposes the wrappers returned by the
+     * previous one, so it must only be called through {@link #getTransceivers()}
+     * which keeps these up to date. Only accessed from this PeerConnection's
+     * executor.
+     */
+    private final Map<String, RtpTransceiver> transceiversBySenderId = new HashMap<>();
+    private final Map<String, RtpTransceiver> transceiversByReceiverId = new HashMap<>();
+
     PeerConnectionObserver(WebRTCModule webRTCModule, int id) {
         this.webRTCModule = webRTCModule;
         this.id = id;
         this.dataChannels = new HashMap<>();
-        this.remoteStreamIds = new HashMap<>();
-        this.remoteStreams = new HashMap<>();
-        this.remoteTracks = new HashMap<>();
+        // The remote streams and tracks are also looked up from outside this
+        // PeerConnection's executor, see WebRTCModule#getStreamForReactTag.
+        this.remoteStreamIds = new ConcurrentHashMap<>();
+        this.remoteStreams = new ConcurrentHashMap<>();
+        this.remoteTracks = new ConcurrentHashMap<>();
         this.videoTrackAdapters = new VideoTrackAdapter(webRTCModule, id);
     }
 
@@ -82,6 +103,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         for (DataChannelWrapper dcw : dataChannels.values()) {
             DataChannel dataChannel = dcw.getDataChannel();
             dataChannel.unregisterObserver();
+            dcw.dispose();
         }
 
         // At this point there should be no local MediaStreams in the associated
@@ -93,6 +115,9 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         remoteStreams.clear();
         remoteTracks.clear();
         dataChannels.clear();
+        transceiversBySenderId.clear();
+        transceiversByReceiverId.clear();
+        statsSnapshot = null;
     }
 
     public synchronized int getNextTransceiverId() {
@@ -104,7 +129,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             return null;
         }
 
-        return peerConnection.addTransceiver(mediaType, init);
+        return indexTransceiver(peerConnection.addTransceiver(mediaType, init));
     }
 
     RtpTransceiver addTransceiver(MediaStreamTrack track, RtpTransceiver.RtpTransceiverInit init) {
@@ -112,34 +137,79 @@ class PeerConnectionObserver implements PeerConnection.Observer {
             return null;
         }
 
-        return peerConnection.addTransceiver(track, init);
+        return indexTransceiver(peerConnection.addTransceiver(track, init));
+    }
+
+    /**
+     * Gets the current transceivers of the PeerConnection and updates the
+     * index used by {@link #getTransceiver}, {@link #getSender} and
+     * {@link #getReceiver} with them.
+     */
+    List<RtpTransceiver> getTransceivers() {
+        List<RtpTransceiver> transceivers = peerConnection.getTransceivers();
+
+        transceiversBySenderId.clear();
+        transceiversByReceiverId.clear();
+        for (RtpTransceiver transceiver : transceivers) {
+            indexTransceiver(transceiver);
+        }
+
+        return transceivers;
+    }
+
+    private RtpTransceiver indexTransceiver(RtpTransceiver transceiver) {
+        if (transceiver != null) {
+            transceiversBySenderId.put(transceiver.getSender().id(), transceiver);
+            transceiversByReceiverId.put(transceiver.getReceiver().id(), transceiver);
+        }
+
+        return transceiver;
     }
 
     RtpSender getSender(String id) {
+        RtpTransceiver transceiver = getTransceiver(id);
+
+        return transceiver == null ? null : transceiver.getSender();
+    }
+
+    RtpReceiver getReceiver(String id) {
+        RtpTransceiver transceiver = getTransceiverByReceiverId(id);
+
+        return transceiver == null ? null : transceiver.getReceiver();
+    }
+
+    /**
+     * Gets the transceiver with the given sender ID (which is also what
+     * identifies transceivers on the JS side).
+     */
+    RtpTransceiver getTransceiver(String id) {
         if (this.peerConnection == null) {
             return null;
         }
 
-        for (RtpSender sender : this.peerConnection.getSenders()) {
-            if (sender.id().equals(id)) {
-                return sender;
-            }
+        RtpTransceiver transceiver = transceiversBySenderId.get(id);
+        if (transceiver == null) {
+            // Transceivers are only ever added (by addTrack, addTransceiver or
+            // setRemoteDescription) so a miss means the index is outdated.
+            getTransceivers();
+            transceiver = transceiversBySenderId.get(id);
         }
 
-        return null;
+        return transceiver;
     }
 
-    RtpTransceiver getTransceiver(String id) {
+    private RtpTransceiver getTransceiverByReceiverId(String id) {
         if (this.peerConnection == null) {
             return null;
         }
 
-        for (RtpTransceiver transceiver : this.peerConnection.getTransceivers()) {
-            if (transceiver.getSender().id().equals(id)) {
-                return transceiver;
-            }
+        RtpTransceiver transceiver = transceiversByReceiverId.get(id);
+        if (transceiver == null) {
+            getTransceivers();
+            transceiver = transceiversByReceiverId.get(id);
         }
-        return null;
+
+        return transceiver;
     }
 
     WritableMap createDataChannel(String label, ReadableMap config) {
@@ -207,9 +277,20 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
         DataChannel dataChannel = dcw.getDataChannel();
         dataChannel.unregisterObserver();
+        dcw.dispose();
         dataChannels.remove(reactTag);
     }
 
+    void dataChannelSetMessageBatching(String reactTag, @Nullable ReadableMap options) {
+        DataChannelWrapper dcw = dataChannels.get(reactTag);
+        if (dcw == null) {
+            Log.d(TAG, "dataChannelSetMessageBatching() dataChannel is null");
+            return;
+        }
+
+        dcw.setMessageBatching(options);
+    }
+
     void dataChannelSend(String reactTag, String data, String type) {
         DataChannelWrapper dcw = dataChannels.get(reactTag);
         if (dcw == null) {
@@ -235,14 +316,25 @@ class PeerConnectionObserver implements PeerConnection.Observer {
         peerConnection.getStats(rtcStatsReport -> promise.resolve(StringUtils.statsToJSON(rtcStatsReport)));
     }
 
+    /**
+     * Gets the stats of the PeerConnection as a diff against the report of the
+     * previous call, see {@link StringUtils#statsDeltaToJSON}.
+     *
+     * @param reset {@code true} to discard the previous report and get the
+     * full stats.
+     * @param promise
+     */
+    void getStatsDelta(boolean reset, Promise promise) {
+        peerConnection.getStats(rtcStatsReport -> {
+            // The reports are delivered one at a time, on the signaling thread.
+            Map<String, RTCStats> previous = reset ? null : statsSnapshot;
+            statsSnapshot = rtcStatsReport.getStatsMap();
+            promise.resolve(StringUtils.statsDeltaToJSON(rtcStatsReport, previous));
+        });
+    }
+
     public void receiverGetStats(String receiverId, Promise promise) {
-        RtpReceiver targetReceiver = null;
-        for (RtpReceiver r : peerConnection.getReceivers()) {
-            if (r.id().equals(receiverId)) {
-                targetReceiver = r;
-                break;
-            }
-        }
+        RtpReceiver targetReceiver = getReceiver(receiverId);
 
         if (targetReceiver == null) {
             Log.w(TAG, "receiverGetStats(): Receiver ID " + receiverId + " not found");
@@ -254,13 +346,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     }
 
     public void senderGetStats(String senderId, Promise promise) {
-        RtpSender targetSender = null;
-        for (RtpSender s : peerConnection.getSenders()) {
-            if (s.id().equals(senderId)) {
-                targetSender = s;
-                break;
-            }
-        }
+        RtpSender targetSender = getSender(senderId);
 
         if (targetSender == null) {
             Log.w(TAG, "senderGetStats(): Sender ID " + senderId + " not found");
@@ -275,7 +361,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     public void onIceCandidate(final IceCandidate candidate) {
         Log.d(TAG, "onIceCandidate");
 
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
 
@@ -305,7 +391,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onIceConnectionChange(PeerConnection.IceConnectionState iceConnectionState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("iceConnectionState", iceConnectionStateString(iceConnectionState));
@@ -315,7 +401,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onConnectionChange(PeerConnection.PeerConnectionState peerConnectionState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("connectionState", peerConnectionStateString(peerConnectionState));
@@ -331,7 +417,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     public void onIceGatheringChange(PeerConnection.IceGatheringState iceGatheringState) {
         Log.d(TAG, "onIceGatheringChange" + iceGatheringState.name());
 
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("iceGatheringState", iceGatheringStateString(iceGatheringState));
@@ -353,7 +439,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onDataChannel(DataChannel dataChannel) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             final String reactTag = UUID.randomUUID().toString();
             DataChannelWrapper dcw = new DataChannelWrapper(webRTCModule, id, reactTag, dataChannel);
             dataChannels.put(reactTag, dcw);
@@ -384,7 +470,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onRenegotiationNeeded() {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             webRTCModule.sendEvent("peerConnectionOnRenegotiationNeeded", params);
@@ -393,7 +479,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
 
     @Override
     public void onSignalingChange(PeerConnection.SignalingState signalingState) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", id);
             params.putString("signalingState", signalingStateString(signalingState));
@@ -409,14 +495,8 @@ class PeerConnectionObserver implements PeerConnection.Observer {
     public void onAddTrack(final RtpReceiver receiver, final MediaStream[] mediaStreams) {
         Log.d(TAG, "onAddTrack");
 
-        ThreadUtils.runOnExecutor(() -> {
-            RtpTransceiver transceiver = null;
-            for (RtpTransceiver t : this.peerConnection.getTransceivers()) {
-                if (Objects.equals(t.getReceiver().id(), receiver.id())) {
-                    transceiver = t;
-                    break;
-                }
-            }
+        ThreadUtils.runOnExecutor(id, () -> {
+            RtpTransceiver transceiver = getTransceiverByReceiverId(receiver.id());
 
             if (transceiver == null) {
                 return;
@@ -478,7 +558,7 @@ class PeerConnectionObserver implements PeerConnection.Observer {
      */
     @Override
     public void onRemoveTrack(RtpReceiver receiver) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap params = Arguments.createMap();
             params.putInt("pcId", this.id);
             params.putString("receiverId", receiver.id());
@@ -1,5 +1,8 @@
 package com.oney.WebRTCModule;
 
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.ReadableMap;
 import com.facebook.react.uimanager.SimpleViewManager;
 import com.facebook.react.uimanager.ThemedReactContext;
 import com.facebook.react.uimanager.annotations.ReactProp;
@@ -51,6 +54,60 @@ public class RTCVideoViewManager extends SimpleViewManager<WebRTCView> {
         view.setObjectFit(objectFit);
     }
 
+    /**
+     * Sets whether a specific {@link WebRTCView} stops rendering while it's
+     * not visible.
+     *
+     * @param view The {@code WebRTCView} on which the specified
+     * {@code autoPause} is to be set.
+     * @param autoPause {@code true} to pause the rendering while the view is
+     * not visible; otherwise, {@code false}.
+     */
+    @ReactProp(name = "autoPause")
+    public void setAutoPause(WebRTCView view, boolean autoPause) {
+        view.setAutoPause(autoPause);
+    }
+
+    /**
+     * Sets the maximum rate at which a specific {@link WebRTCView} renders
+     * frames.
+     *
+     * @param view The {@code WebRTCView} on which the specified {@code maxFps}
+     * is to be set.
+     * @param maxFps The maximum number of frames per second, or {@code 0} for
+     * no maximum.
+     */
+    @ReactProp(name = "maxFps", defaultFloat = 0f)
+    public void setMaxFps(WebRTCView view, float maxFps) {
+        view.setMaxFps(maxFps);
+    }
+
+    /**
+     * Sets the maximum resolution at which a specific {@link WebRTCView}
+     * renders its video.
+     *
+     * @param view The {@code WebRTCView} on which the specified
+     * {@code maxRenderResolution} is to be set.
+     * @param maxRenderResolution The maximum {@code width} and {@code height}
+     * in pixels, or {@code null} for no maximum.
+     */
+    @ReactProp(name = "maxRenderResolution")
+    public void setMaxRenderResolution(WebRTCView view, @Nullable ReadableMap maxRenderResolution) {
+        int width = 0;
+        int height = 0;
+
+        if (maxRenderResolution != null) {
+            if (maxRenderResolution.hasKey("width")) {
+                width = maxRenderResolution.getInt("width");
+            }
+            if (maxRenderResolution.hasKey("height")) {
+                height = maxRenderResolution.getInt("height");
+            }
+        }
+
+        view.setMaxRenderResolution(width, height);
+    }
+
     @ReactProp(name = "streamURL")
     public void setStreamURL(WebRTCView view, String streamURL) {
         view.setStreamURL(streamURL);
@@ -0,0 +1,112 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+import android.util.Pair;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.MediaStreamTrack;
+import org.webrtc.PeerConnectionFactory;
+import org.webrtc.RtpCapabilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the sender and receiver {@link RtpCapabilities} of a
+ * {@link PeerConnectionFactory}, along with their serialized form. They
+ * don't change for the lifetime of the factory, but getting them queries the
+ * codec factories which, for the hardware ones, is slow (MediaCodecList).
+ */
+class RtpCapabilitiesCache {
+    private static final String TAG = WebRTCModule.TAG;
+
+    private final PeerConnectionFactory factory;
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    RtpCapabilitiesCache(PeerConnectionFactory factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Computes the capabilities for all the media types upfront.
+     */
+    void prewarm() {
+        long start = System.nanoTime();
+
+        for (MediaStreamTrack.MediaType mediaType : new MediaStreamTrack.MediaType[] {
+                     MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO, MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO}) {
+            getEntry(true, mediaType);
+            getEntry(false, mediaType);
+        }
+
+        Log.d(TAG, "RtpCapabilitiesCache: prewarmed in " + (System.nanoTime() - start) / 1000000 + "ms");
+    }
+
+    RtpCapabilities getCapabilities(boolean sender, MediaStreamTrack.MediaType mediaType) {
+        return getEntry(sender, mediaType).capabilities;
+    }
+
+    /**
+     * Gets the serialized capabilities, see
+     * {@link SerializeUtils#serializeRtpCapabilities}. A new map is returned
+     * every time since maps can only be sent over the bridge once.
+     */
+    WritableMap getSerializedCapabilities(boolean sender, MediaStreamTrack.MediaType mediaType) {
+        WritableMap result = Arguments.createMap();
+        result.merge(getEntry(sender, mediaType).serialized);
+        return result;
+    }
+
+    /**
+     * Gets the codecs of the capabilities, each along with its serialized form
+     * as a {@code Map}, in the same order.
+     */
+    List<Pair<Map<String, Object>, RtpCapabilities.CodecCapability>> getCodecs(
+            boolean sender, MediaStreamTrack.MediaType mediaType) {
+        return getEntry(sender, mediaType).codecs;
+    }
+
+    private synchronized Entry getEntry(boolean sender, MediaStreamTrack.MediaType mediaType) {
+        String key = (sender ? "sender:" : "receiver:") + mediaType.name();
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            long start = System.nanoTime();
+
+            RtpCapabilities capabilities = sender ? factory.getRtpSenderCapabilities(mediaType)
+                                                  : factory.getRtpReceiverCapabilities(mediaType);
+            entry = new Entry(capabilities);
+            entries.put(key, entry);
+
+            Log.d(TAG,
+                    "RtpCapabilitiesCache: computed " + key + " capabilities in "
+                            + (System.nanoTime() - start) / 1000000 + "ms");
+        }
+
+        return entry;
+    }
+
+    private static class Entry {
+        final RtpCapabilities capabilities;
+        final ReadableMap serialized;
+        final List<Pair<Map<String, Object>, RtpCapabilities.CodecCapability>> codecs;
+
+        Entry(RtpCapabilities capabilities) {
+            this.capabilities = capabilities;
+            this.serialized = SerializeUtils.serializeRtpCapabilities(capabilities);
+
+            List<Pair<Map<String, Object>, RtpCapabilities.CodecCapability>> codecs = new ArrayList<>();
+            for (RtpCapabilities.CodecCapability codec : capabilities.codecs) {
+                Map<String, Object> codecDict = SerializeUtils.serializeRtpCapabilitiesCodec(codec).toHashMap();
+                codecs.add(new Pair<>(Collections.unmodifiableMap(codecDict), codec));
+            }
+            this.codecs = Collections.unmodifiableList(codecs);
+        }
+    }
+}
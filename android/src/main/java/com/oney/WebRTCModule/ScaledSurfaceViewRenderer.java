@@ -0,0 +1,106 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.view.View;
+
+import org.webrtc.SurfaceViewRenderer;
+
+/**
+ * {@link SurfaceViewRenderer} whose surface can be made smaller than the view
+ * itself, in which case the video is rendered at the smaller size and the
+ * compositor scales the surface up to the view size. That caps the rendering
+ * cost of views which are laid out larger than needed.
+ *
+ * {@code SurfaceViewRenderer} sizes its surface from the layout whenever it's
+ * laid out or the frame resolution changes, so the cap is applied again after
+ * it does.
+ */
+class ScaledSurfaceViewRenderer extends SurfaceViewRenderer implements WebRTCViewRenderer {
+    private int maxSurfaceWidth;
+    private int maxSurfaceHeight;
+
+    private final Runnable applyMaxSurfaceSizeRunnable = this::applyMaxSurfaceSize;
+
+    ScaledSurfaceViewRenderer(Context context) {
+        super(context);
+    }
+
+    @Override
+    public View getView() {
+        return this;
+    }
+
+    @Override
+    public void setMaxSurfaceSize(int maxSurfaceWidth, int maxSurfaceHeight) {
+        if (this.maxSurfaceWidth == maxSurfaceWidth && this.maxSurfaceHeight == maxSurfaceHeight) {
+            return;
+        }
+
+        boolean hadMaxSurfaceSize = hasMaxSurfaceSize();
+
+        this.maxSurfaceWidth = maxSurfaceWidth;
+        this.maxSurfaceHeight = maxSurfaceHeight;
+
+        if (hasMaxSurfaceSize()) {
+            applyMaxSurfaceSize();
+        } else if (hadMaxSurfaceSize) {
+            getHolder().setSizeFromLayout();
+        }
+    }
+
+    @Override
+    public int[] getSurfaceSize() {
+        return WebRTCViewRenderer.getSurfaceSize(getWidth(), getHeight(), maxSurfaceWidth, maxSurfaceHeight);
+    }
+
+    @Override
+    public void setZOrder(int zOrder) {
+        switch (zOrder) {
+            case 0:
+                setZOrderMediaOverlay(false);
+                break;
+            case 1:
+                setZOrderMediaOverlay(true);
+                break;
+            case 2:
+                setZOrderOnTop(true);
+                break;
+        }
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        applyMaxSurfaceSize();
+    }
+
+    @Override
+    public void onFrameResolutionChanged(int videoWidth, int videoHeight, int rotation) {
+        super.onFrameResolutionChanged(videoWidth, videoHeight, rotation);
+        // The super implementation posts the resizing of the surface to the UI
+        // thread, cap it after that.
+        if (hasMaxSurfaceSize()) {
+            post(applyMaxSurfaceSizeRunnable);
+        }
+    }
+
+    private boolean hasMaxSurfaceSize() {
+        return maxSurfaceWidth > 0 || maxSurfaceHeight > 0;
+    }
+
+    private void applyMaxSurfaceSize() {
+        int width = getWidth();
+        int height = getHeight();
+
+        if (!hasMaxSurfaceSize() || width == 0 || height == 0) {
+            return;
+        }
+
+        int[] size = WebRTCViewRenderer.getSurfaceSize(width, height, maxSurfaceWidth, maxSurfaceHeight);
+        if (size[0] < width || size[1] < height) {
+            getHolder().setFixedSize(Math.max(1, size[0]), Math.max(1, size[1]));
+        } else {
+            getHolder().setSizeFromLayout();
+        }
+    }
+}
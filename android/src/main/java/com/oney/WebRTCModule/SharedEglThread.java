@@ -0,0 +1,60 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import org.webrtc.EglBase;
+import org.webrtc.EglThread;
+
+/**
+ * The render thread and EGL context shared by all the
+ * {@link TextureViewRenderer}s, which only have an EGL surface of their own.
+ * The thread is created when the first renderer is initialized and quits when
+ * the last one is released.
+ */
+final class SharedEglThread {
+    private static final String TAG = WebRTCModule.TAG;
+
+    private static EglThread eglThread;
+
+    /**
+     * The number of renderers using {@link #eglThread}.
+     */
+    private static int refCount;
+
+    private SharedEglThread() {}
+
+    /**
+     * Gets the shared thread, creating it if needed. Each call must be matched
+     * by a call to {@link EglThread#release}, which the {@code EglRenderer}
+     * initialized with it does when it's released.
+     */
+    static synchronized EglThread acquire(EglBase.Context sharedContext) {
+        if (eglThread == null) {
+            eglThread = EglThread.create(SharedEglThread::onRelease, sharedContext, EglBase.CONFIG_PLAIN);
+            Log.d(TAG, "SharedEglThread: created the render thread");
+        }
+
+        refCount++;
+
+        return eglThread;
+    }
+
+    static synchronized int getRefCount() {
+        return refCount;
+    }
+
+    private static synchronized boolean onRelease(EglThread thread) {
+        if (thread != eglThread) {
+            return true;
+        }
+
+        if (--refCount > 0) {
+            return false;
+        }
+
+        eglThread = null;
+        Log.d(TAG, "SharedEglThread: releasing the render thread");
+
+        return true;
+    }
+}
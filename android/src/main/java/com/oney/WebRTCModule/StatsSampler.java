@@ -0,0 +1,232 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.LifecycleEventListener;
+import com.facebook.react.bridge.ReadableArray;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.PeerConnection;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Periodically gets the stats of the PeerConnections which registered for it
+ * and pushes them to JS as {@code peerConnectionStatsSampled} events, so that
+ * JS doesn't need to poll. All the samplers are driven by the (single)
+ * {@link ThreadUtils} scheduler thread. While the app is in the background
+ * the stats are sampled less often.
+ */
+class StatsSampler implements LifecycleEventListener {
+    private static final String TAG = WebRTCModule.TAG;
+
+    private static final long DEFAULT_INTERVAL = 1000;
+    private static final long MIN_INTERVAL = 100;
+
+    /**
+     * Minimum sampling interval while the app is in the background, in
+     * milliseconds.
+     */
+    private static final long BACKGROUND_MIN_INTERVAL = 10000;
+
+    private final WebRTCModule webRTCModule;
+    private final Map<Integer, Sampler> samplers = new ConcurrentHashMap<>();
+    private volatile boolean inBackground;
+
+    StatsSampler(WebRTCModule webRTCModule) {
+        this.webRTCModule = webRTCModule;
+    }
+
+    /**
+     * Starts sampling the stats of the given PeerConnection, replacing the
+     * previous settings if it was being sampled already.
+     *
+     * @param peerConnectionId
+     * @param options {@code interval} in milliseconds and, optionally, the
+     * {@code types} of stats and {@code members} of each to be included.
+     */
+    void start(int peerConnectionId, @Nullable ReadableMap options) {
+        if (webRTCModule.getPeerConnectionObserver(peerConnectionId) == null) {
+            Log.d(TAG, "StatsSampler: unknown or disposed peerConnection " + peerConnectionId);
+            return;
+        }
+
+        Sampler sampler = new Sampler(peerConnectionId, options);
+        Sampler previous = samplers.put(peerConnectionId, sampler);
+
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        sampler.schedule(inBackground);
+    }
+
+    void stop(int peerConnectionId) {
+        Sampler sampler = samplers.remove(peerConnectionId);
+
+        if (sampler != null) {
+            sampler.cancel();
+        }
+    }
+
+    @Override
+    public void onHostResume() {
+        setInBackground(false);
+    }
+
+    @Override
+    public void onHostPause() {
+        setInBackground(true);
+    }
+
+    @Override
+    public void onHostDestroy() {
+        for (Sampler sampler : samplers.values()) {
+            sampler.cancel();
+        }
+        samplers.clear();
+    }
+
+    private synchronized void setInBackground(boolean inBackground) {
+        if (this.inBackground == inBackground) {
+            return;
+        }
+
+        this.inBackground = inBackground;
+
+        for (Sampler sampler : samplers.values()) {
+            sampler.schedule(inBackground);
+        }
+    }
+
+    @Nullable
+    private static Set<String> getStringSet(ReadableMap options, String key) {
+        if (!options.hasKey(key) || options.getType(key) != ReadableType.Array) {
+            return null;
+        }
+
+        ReadableArray array = options.getArray(key);
+        Set<String> set = new HashSet<>(array.size());
+        for (int i = 0; i < array.size(); i++) {
+            set.add(array.getString(i));
+        }
+
+        return set;
+    }
+
+    private final class Sampler {
+        private final int peerConnectionId;
+        private final long interval;
+        @Nullable
+        private final Set<String> types;
+        @Nullable
+        private final Set<String> members;
+
+        /**
+         * Whether a sample was requested and not delivered yet, in which case
+         * the next one is skipped rather than piling up requests.
+         */
+        private final AtomicBoolean sampling = new AtomicBoolean();
+
+        private ScheduledFuture<?> future;
+        private boolean cancelled;
+
+        Sampler(int peerConnectionId, @Nullable ReadableMap options) {
+            this.peerConnectionId = peerConnectionId;
+
+            long interval = DEFAULT_INTERVAL;
+            if (options != null && options.hasKey("interval") && options.getType("interval") == ReadableType.Number) {
+                interval = (long) options.getDouble("interval");
+            }
+            this.interval = Math.max(interval, MIN_INTERVAL);
+
+            types = options == null ? null : getStringSet(options, "types");
+            members = options == null ? null : getStringSet(options, "members");
+        }
+
+        synchronized void schedule(boolean inBackground) {
+            if (cancelled) {
+                return;
+            }
+
+            if (future != null) {
+                future.cancel(false);
+            }
+
+            long period = inBackground ? Math.max(interval, BACKGROUND_MIN_INTERVAL) : interval;
+            future = ThreadUtils.scheduleAtFixedRate(this::sample, period, period, TimeUnit.MILLISECONDS);
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+        }
+
+        private synchronized boolean isCancelled() {
+            return cancelled;
+        }
+
+        private void sample() {
+            if (!sampling.compareAndSet(false, true)) {
+                return;
+            }
+
+            boolean queued = ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+                PeerConnection peerConnection = webRTCModule.getPeerConnection(peerConnectionId);
+                if (peerConnection == null) {
+                    stopForGood();
+                    return;
+                }
+
+                if (isCancelled()) {
+                    sampling.set(false);
+                    return;
+                }
+
+                peerConnection.getStats(rtcStatsReport -> {
+                    sampling.set(false);
+
+                    if (isCancelled()) {
+                        return;
+                    }
+
+                    WritableMap params = Arguments.createMap();
+                    params.putInt("pcId", peerConnectionId);
+                    params.putString("stats", StringUtils.statsToJSON(rtcStatsReport, types, members));
+
+                    webRTCModule.sendEvent("peerConnectionStatsSampled", params);
+                });
+            });
+
+            if (!queued) {
+                // The executor of the PeerConnection is gone with it.
+                stopForGood();
+            }
+        }
+
+        /**
+         * Stops sampling a PeerConnection which is gone, and forgets about it.
+         */
+        private void stopForGood() {
+            Log.d(TAG, "StatsSampler: peerConnection " + peerConnectionId + " is gone, stopping");
+            sampling.set(false);
+            samplers.remove(peerConnectionId, this);
+            cancel();
+        }
+    }
+}
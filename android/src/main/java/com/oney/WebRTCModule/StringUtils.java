@@ -2,15 +2,60 @@ package com.oney.WebRTCModule;
 
 import android.util.Log;
 
+import androidx.annotation.Nullable;
+
 import org.webrtc.PeerConnection;
 import org.webrtc.RTCStats;
 import org.webrtc.RTCStatsReport;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class StringUtils {
     private static final String TAG = StringUtils.class.getSimpleName();
 
+    /**
+     * Initial capacity of the pooled builders, enough for the report of a
+     * PeerConnection with a handful of tracks.
+     */
+    private static final int INITIAL_BUILDER_CAPACITY = 16 * 1024;
+
+    /**
+     * Pooled builders which grew past this capacity (reports with hundreds of
+     * stats objects) are dropped after use instead of being kept around.
+     */
+    private static final int MAX_POOLED_BUILDER_CAPACITY = 256 * 1024;
+
+    /**
+     * Upper bound for the number of cached member keys. The stats members are
+     * a fixed set defined by WebRTC, this is only a safeguard.
+     */
+    private static final int MAX_CACHED_MEMBER_KEYS = 1024;
+
+    /**
+     * The builders used by {@link #statsToJSON}, one per thread. The stats
+     * callbacks are always invoked on the same (signaling) thread, so this
+     * pretty much means a single builder is reused for all reports.
+     */
+    private static final ThreadLocal<StringBuilder> builders = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(INITIAL_BUILDER_CAPACITY);
+        }
+    };
+
+    /**
+     * The JSON encoded key of each stats member (i.e. {@code ,"name":}) mapped
+     * by member name, so that keys are escaped and encoded only once rather
+     * than once per stats object on every report.
+     */
+    private static final Map<String, String> memberKeys = new ConcurrentHashMap<>();
+
     /**
      * Constructs a JSON <tt>String</tt> representation of a specific array of
      * <tt>RTCStatsReport</tt>s (produced by {@link PeerConnection#getStats}).
@@ -21,81 +66,348 @@ public class StringUtils {
      * in JSON format
      */
     public static String statsToJSON(RTCStatsReport report) {
-        StringBuilder builder = new StringBuilder("[");
+        return statsToJSON(report, null, null);
+    }
+
+    /**
+     * Constructs a JSON <tt>String</tt> representation of the stats of a
+     * specific <tt>RTCStatsReport</tt> which match the given selector, in the
+     * same format as {@link #statsToJSON(RTCStatsReport)}.
+     * <p>
+     * @param report the <tt>RTCStatsReport</tt> to represent in JSON format
+     * @param types the types of the stats to include, or <tt>null</tt> for
+     *              all of them
+     * @param members the members of the stats to include, or <tt>null</tt>
+     *                for all of them. <tt>timestamp</tt>, <tt>type</tt> and
+     *                <tt>id</tt> are always included.
+     * @return a <tt>String</tt> which represents the selected stats in JSON
+     * format
+     */
+    public static String statsToJSON(
+            RTCStatsReport report, @Nullable Set<String> types, @Nullable Set<String> members) {
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+
+        builder.append('[');
 
         boolean firstKey = true;
 
-        Map<String, RTCStats> statsMap = report.getStatsMap();
+        for (Map.Entry<String, RTCStats> statsEntry : report.getStatsMap().entrySet()) {
+            RTCStats stats = statsEntry.getValue();
+
+            if (types != null && !types.contains(stats.getType())) {
+                continue;
+            }
 
-        for (String key : report.getStatsMap().keySet()) {
             if (firstKey) {
                 firstKey = false;
             } else {
-                builder.append(",");
+                builder.append(',');
             }
 
-            builder.append("[\"").append(key).append("\",{");
-
-            RTCStats stats = statsMap.get(key);
-            builder.append("\"timestamp\":")
-                    .append(stats.getTimestampUs() / 1000.0)
-                    .append(",\"type\":\"")
-                    .append(stats.getType())
-                    .append("\",\"id\":\"")
-                    .append(stats.getId())
-                    .append("\"");
+            appendStatsStart(builder, statsEntry.getKey(), stats);
 
             for (Map.Entry<String, Object> entry : stats.getMembers().entrySet()) {
-                builder.append(",").append("\"").append(entry.getKey()).append("\":");
+                if (members != null && !members.contains(entry.getKey())) {
+                    continue;
+                }
+
+                builder.append(getMemberKey(entry.getKey()));
                 appendValue(builder, entry.getValue());
             }
 
             builder.append("}]");
         }
 
-        builder.append("]");
+        builder.append(']');
+
+        String json = builder.toString();
 
-        return builder.toString();
+        if (builder.capacity() > MAX_POOLED_BUILDER_CAPACITY) {
+            builders.remove();
+        }
+
+        return json;
+    }
+
+    /**
+     * Constructs a JSON <tt>String</tt> representation of the differences
+     * between a specific <tt>RTCStatsReport</tt> and a previous snapshot of the
+     * same PeerConnection's stats. The result is an object with two members:
+     * <tt>changed</tt>, an array of [id, stats] pairs in the format used by
+     * {@link #statsToJSON} which only carry the members that are new or whose
+     * value changed (plus <tt>timestamp</tt>, <tt>type</tt> and <tt>id</tt>),
+     * and <tt>removed</tt>, the IDs of the stats which are gone. Stats which
+     * lost members are reported as removed and then changed in full.
+     * <p>
+     * @param report the <tt>RTCStatsReport</tt> to represent in JSON format
+     * @param previous the stats of the previous report mapped by ID, or
+     *                 <tt>null</tt> to represent the whole <tt>report</tt>
+     * @return a <tt>String</tt> which represents the changes in JSON format
+     */
+    public static String statsDeltaToJSON(RTCStatsReport report, @Nullable Map<String, RTCStats> previous) {
+        StringBuilder builder = builders.get();
+        builder.setLength(0);
+
+        builder.append("{\"changed\":[");
+
+        Map<String, RTCStats> statsMap = report.getStatsMap();
+        List<String> removed = new ArrayList<>();
+        boolean firstKey = true;
+
+        for (Map.Entry<String, RTCStats> statsEntry : statsMap.entrySet()) {
+            RTCStats stats = statsEntry.getValue();
+            Map<String, Object> members = stats.getMembers();
+            RTCStats previousStats = previous == null ? null : previous.get(statsEntry.getKey());
+
+            if (previousStats != null && !isSameShape(previousStats, stats)) {
+                removed.add(statsEntry.getKey());
+                previousStats = null;
+            }
+
+            int start = builder.length();
+            if (!firstKey) {
+                builder.append(',');
+            }
+
+            appendStatsStart(builder, statsEntry.getKey(), stats);
+
+            Map<String, Object> previousMembers = previousStats == null ? null : previousStats.getMembers();
+            boolean changed = previousMembers == null;
+
+            for (Map.Entry<String, Object> entry : members.entrySet()) {
+                if (previousMembers != null && valueEquals(previousMembers.get(entry.getKey()), entry.getValue())) {
+                    continue;
+                }
+
+                builder.append(getMemberKey(entry.getKey()));
+                appendValue(builder, entry.getValue());
+                changed = true;
+            }
+
+            if (changed) {
+                builder.append("}]");
+                firstKey = false;
+            } else {
+                builder.setLength(start);
+            }
+        }
+
+        builder.append("],\"removed\":[");
+
+        if (previous != null) {
+            for (String key : previous.keySet()) {
+                if (!statsMap.containsKey(key)) {
+                    removed.add(key);
+                }
+            }
+        }
+
+        for (int i = 0; i < removed.size(); ++i) {
+            if (i != 0) {
+                builder.append(',');
+            }
+
+            appendString(builder, removed.get(i));
+        }
+
+        builder.append("]}");
+
+        String json = builder.toString();
+
+        if (builder.capacity() > MAX_POOLED_BUILDER_CAPACITY) {
+            builders.remove();
+        }
+
+        return json;
+    }
+
+    /**
+     * Appends the start of the [id, stats] pair representing the given stats,
+     * up to and including the <tt>id</tt> member.
+     */
+    private static void appendStatsStart(StringBuilder builder, String key, RTCStats stats) {
+        builder.append('[');
+        appendString(builder, key);
+        builder.append(",{");
+
+        builder.append("\"timestamp\":");
+        appendNumber(builder, stats.getTimestampUs() / 1000.0);
+        builder.append(",\"type\":");
+        appendString(builder, stats.getType());
+        builder.append(",\"id\":");
+        appendString(builder, stats.getId());
+    }
+
+    /**
+     * Whether the given stats have the same type and the current ones have
+     * (at least) all the members the previous ones had, i.e. whether sending
+     * only the changed members is enough to go from one to the other.
+     */
+    private static boolean isSameShape(RTCStats previous, RTCStats current) {
+        if (!previous.getType().equals(current.getType())) {
+            return false;
+        }
+
+        Map<String, Object> members = current.getMembers();
+
+        for (String key : previous.getMembers().keySet()) {
+            if (!members.containsKey(key)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean valueEquals(Object a, Object b) {
+        if (a instanceof Object[] && b instanceof Object[]) {
+            return Arrays.deepEquals((Object[]) a, (Object[]) b);
+        }
+
+        return Objects.equals(a, b);
+    }
+
+    private static String getMemberKey(String name) {
+        String key = memberKeys.get(name);
+
+        if (key == null) {
+            StringBuilder builder = new StringBuilder(name.length() + 4);
+            builder.append(',');
+            appendString(builder, name);
+            builder.append(':');
+            key = builder.toString();
+
+            if (memberKeys.size() < MAX_CACHED_MEMBER_KEYS) {
+                memberKeys.put(name, key);
+            }
+        }
+
+        return key;
     }
 
     private static void appendValue(StringBuilder builder, Object value) {
-        if (value instanceof Object[]) {
+        // The checks are ordered by how common the member types are.
+        if (value instanceof String) {
+            appendString(builder, (String) value);
+        } else if (value instanceof Long || value instanceof Integer) {
+            builder.append(((Number) value).longValue());
+        } else if (value instanceof Double) {
+            appendNumber(builder, (Double) value);
+        } else if (value instanceof Boolean) {
+            builder.append(((Boolean) value).booleanValue());
+        } else if (value instanceof Object[]) {
             Object[] arrayValue = (Object[]) value;
-            builder.append("[");
+            builder.append('[');
 
             for (int i = 0; i < arrayValue.length; ++i) {
                 if (i != 0) {
-                    builder.append(",");
+                    builder.append(',');
                 }
 
                 appendValue(builder, arrayValue[i]);
             }
 
-            builder.append("]");
+            builder.append(']');
         } else if (value instanceof Map) {
+            // Where the value starts, so that a partially appended one can
+            // be dropped.
+            int start = builder.length();
+
             try {
                 Map<String, Object> mapValue = (Map) value;
 
                 boolean firstKey = true;
-                builder.append("{");
+                builder.append('{');
 
                 for (Map.Entry<String, Object> entry : mapValue.entrySet()) {
                     if (firstKey) {
                         firstKey = false;
                     } else {
-                        builder.append(",");
+                        builder.append(',');
                     }
-                    builder.append("\"").append(entry.getKey()).append("\":");
+                    appendString(builder, entry.getKey());
+                    builder.append(':');
                     appendValue(builder, entry.getValue());
                 }
-                builder.append("}");
+                builder.append('}');
             } catch (ClassCastException e) {
                 Log.e(TAG, "Error parsing stats value " + value);
+                builder.setLength(start);
+                builder.append("null");
             }
-        } else if (value instanceof String) {
-            builder.append("\"").append(value).append("\"");
+        } else if (value instanceof Number) {
+            // BigInteger (uint64 members) and anything else numeric.
+            builder.append(value);
+        } else if (value == null) {
+            builder.append("null");
+        } else {
+            appendString(builder, value.toString());
+        }
+    }
+
+    /**
+     * Appends the given number, NaN and infinite values are not valid JSON and
+     * are thus represented as {@code null}.
+     */
+    private static void appendNumber(StringBuilder builder, double value) {
+        if (Double.isNaN(value) || Double.isInfinite(value)) {
+            builder.append("null");
         } else {
             builder.append(value);
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Appends the given {@code String} as a quoted and escaped JSON string.
+     */
+    private static void appendString(StringBuilder builder, String value) {
+        builder.append('"');
+
+        int length = value.length();
+        int start = 0;
+
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+
+            if (c >= 0x20 && c != '"' && c != '\\') {
+                continue;
+            }
+
+            builder.append(value, start, i);
+            start = i + 1;
+
+            switch (c) {
+                case '"':
+                    builder.append("\\\"");
+                    break;
+                case '\\':
+                    builder.append("\\\\");
+                    break;
+                case '\n':
+                    builder.append("\\n");
+                    break;
+                case '\r':
+                    builder.append("\\r");
+                    break;
+                case '\t':
+                    builder.append("\\t");
+                    break;
+                case '\b':
+                    builder.append("\\b");
+                    break;
+                case '\f':
+                    builder.append("\\f");
+                    break;
+                default:
+                    builder.append("\\u00");
+                    builder.append(Character.forDigit(c >> 4, 16));
+                    builder.append(Character.forDigit(c & 0xF, 16));
+                    break;
+            }
+        }
+
+        builder.append(value, start, length);
+        builder.append('"');
+    }
+}
@@ -0,0 +1,138 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.EglBase;
+import org.webrtc.SurfaceTextureHelper;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded pool of {@link SurfaceTextureHelper}s for the video capturers, all
+ * of them sharing the root EGL context (see {@link EglUtils}). Creating one
+ * starts a thread, an EGL context and an OES texture, which is slow, so the
+ * ones of disposed tracks are kept around for a while in case another track
+ * gets created (e.g. when toggling the camera or screen sharing).
+ * Helpers which stay idle for longer than {@link #IDLE_TIMEOUT} are disposed.
+ */
+class SurfaceTextureHelperPool {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Maximum number of idle helpers kept in the pool.
+     */
+    private static final int MAX_IDLE_HELPERS = 2;
+
+    /**
+     * Time, in milliseconds, after which an idle helper is disposed.
+     */
+    private static final long IDLE_TIMEOUT = 30000;
+
+    private final ArrayDeque<IdleHelper> idleHelpers = new ArrayDeque<>();
+    private ScheduledFuture<?> evictionFuture;
+
+    /**
+     * Gets the most recently released idle helper, or creates a new one.
+     *
+     * @return the helper, or {@code null} if one couldn't be created.
+     */
+    @Nullable
+    synchronized SurfaceTextureHelper acquire() {
+        IdleHelper idleHelper = idleHelpers.pollFirst();
+        if (idleHelper != null) {
+            Log.d(TAG, "SurfaceTextureHelperPool: reusing helper, " + idleHelpers.size() + " left idle");
+            return idleHelper.helper;
+        }
+
+        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+        return SurfaceTextureHelper.create("CaptureThread", eglContext);
+    }
+
+    synchronized boolean hasIdleHelpers() {
+        return !idleHelpers.isEmpty();
+    }
+
+    /**
+     * Creates a helper and adds it to the pool, unless there are idle ones
+     * already, so that the next {@link #acquire} is fast.
+     */
+    void prewarm() {
+        if (hasIdleHelpers()) {
+            return;
+        }
+
+        EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
+        SurfaceTextureHelper helper = SurfaceTextureHelper.create("CaptureThread", eglContext);
+        if (helper != null) {
+            release(helper);
+        }
+    }
+
+    /**
+     * Returns a helper to the pool. The capturer which was using it must have
+     * been stopped and disposed already.
+     */
+    void release(SurfaceTextureHelper helper) {
+        helper.stopListening();
+        helper.setFrameRotation(0);
+
+        SurfaceTextureHelper evicted = null;
+
+        synchronized (this) {
+            idleHelpers.addFirst(new IdleHelper(helper));
+
+            if (idleHelpers.size() > MAX_IDLE_HELPERS) {
+                evicted = idleHelpers.removeLast().helper;
+            }
+
+            if (evictionFuture == null) {
+                evictionFuture = ThreadUtils.schedule(this::evictIdleHelpers, IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        if (evicted != null) {
+            dispose(evicted);
+        }
+    }
+
+    private synchronized void evictIdleHelpers() {
+        evictionFuture = null;
+
+        long now = SystemClock.elapsedRealtime();
+        IdleHelper idleHelper;
+
+        // The most recently released helpers are at the front.
+        while ((idleHelper = idleHelpers.peekLast()) != null && now - idleHelper.idleSince >= IDLE_TIMEOUT) {
+            idleHelpers.removeLast();
+            dispose(idleHelper.helper);
+        }
+
+        if (idleHelper != null) {
+            long delay = IDLE_TIMEOUT - (now - idleHelper.idleSince);
+            evictionFuture = ThreadUtils.schedule(this::evictIdleHelpers, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static void dispose(SurfaceTextureHelper helper) {
+        // Disposing blocks until the helper's thread is done, so don't do it
+        // on the scheduler thread.
+        ThreadUtils.runOnExecutor(() -> {
+            helper.dispose();
+            Log.d(TAG, "SurfaceTextureHelperPool: disposed idle helper");
+        });
+    }
+
+    private static class IdleHelper {
+        final SurfaceTextureHelper helper;
+        final long idleSince = SystemClock.elapsedRealtime();
+
+        IdleHelper(SurfaceTextureHelper helper) {
+            this.helper = helper;
+        }
+    }
+}
@@ -0,0 +1,232 @@
+package com.oney.WebRTCModule;
+
+import android.content.Context;
+import android.graphics.Point;
+import android.graphics.SurfaceTexture;
+import android.view.TextureView;
+import android.view.View;
+
+import org.webrtc.EglBase;
+import org.webrtc.EglRenderer;
+import org.webrtc.EglThread;
+import org.webrtc.GlRectDrawer;
+import org.webrtc.RendererCommon;
+import org.webrtc.VideoFrame;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * {@link WebRTCViewRenderer} drawing into a {@link TextureView}. Unlike
+ * {@link org.webrtc.SurfaceViewRenderer}, which has a render thread and an EGL
+ * context of its own, all instances render on the {@link SharedEglThread} and
+ * only have an EGL surface each, so that a large number of them (e.g. in a
+ * grid) can be shown at once. Being composited with the rest of the views,
+ * they also don't need a z-order.
+ */
+class TextureViewRenderer extends TextureView implements WebRTCViewRenderer, TextureView.SurfaceTextureListener {
+    private static final String TAG = TextureViewRenderer.class.getSimpleName();
+
+    private final EglRenderer eglRenderer;
+    private final RendererCommon.VideoLayoutMeasure videoLayoutMeasure = new RendererCommon.VideoLayoutMeasure();
+
+    private RendererCommon.RendererEvents rendererEvents;
+
+    /*
+     * Accessed on the thread delivering the frames.
+     */
+    private boolean isFirstFrameRendered;
+    private int frameWidth;
+    private int frameHeight;
+    private int frameRotation;
+
+    /*
+     * Accessed on the UI thread.
+     */
+    private int rotatedFrameWidth;
+    private int rotatedFrameHeight;
+    private int maxSurfaceWidth;
+    private int maxSurfaceHeight;
+
+    TextureViewRenderer(Context context) {
+        super(context);
+
+        eglRenderer = new EglRenderer(TAG);
+        setOpaque(false);
+        setSurfaceTextureListener(this);
+    }
+
+    @Override
+    public View getView() {
+        return this;
+    }
+
+    @Override
+    public void init(EglBase.Context sharedContext, RendererCommon.RendererEvents rendererEvents) {
+        this.rendererEvents = rendererEvents;
+        isFirstFrameRendered = false;
+        frameWidth = 0;
+        frameHeight = 0;
+        frameRotation = 0;
+        rotatedFrameWidth = 0;
+        rotatedFrameHeight = 0;
+
+        EglThread eglThread = SharedEglThread.acquire(sharedContext);
+        try {
+            eglRenderer.init(eglThread, new GlRectDrawer(), false);
+        } catch (RuntimeException e) {
+            // The renderer didn't take over the reference to the shared
+            // thread, so it won't release it.
+            eglThread.release();
+            throw e;
+        }
+
+        SurfaceTexture surfaceTexture = getSurfaceTexture();
+        if (isAvailable() && surfaceTexture != null) {
+            applyMaxSurfaceSize();
+            eglRenderer.createEglSurface(surfaceTexture);
+        }
+    }
+
+    @Override
+    public void release() {
+        // Also releases the shared thread, when this is its last user.
+        eglRenderer.release();
+    }
+
+    @Override
+    public void clearImage() {
+        eglRenderer.clearImage();
+    }
+
+    @Override
+    public void setMirror(boolean mirror) {
+        eglRenderer.setMirror(mirror);
+    }
+
+    @Override
+    public void setScalingType(RendererCommon.ScalingType scalingType) {
+        videoLayoutMeasure.setScalingType(scalingType);
+        requestLayout();
+    }
+
+    @Override
+    public void setFpsReduction(float fps) {
+        eglRenderer.setFpsReduction(fps);
+    }
+
+    @Override
+    public void setMaxSurfaceSize(int maxSurfaceWidth, int maxSurfaceHeight) {
+        if (this.maxSurfaceWidth != maxSurfaceWidth || this.maxSurfaceHeight != maxSurfaceHeight) {
+            this.maxSurfaceWidth = maxSurfaceWidth;
+            this.maxSurfaceHeight = maxSurfaceHeight;
+            applyMaxSurfaceSize();
+        }
+    }
+
+    @Override
+    public int[] getSurfaceSize() {
+        return WebRTCViewRenderer.getSurfaceSize(getWidth(), getHeight(), maxSurfaceWidth, maxSurfaceHeight);
+    }
+
+    @Override
+    public void setZOrder(int zOrder) {
+        // TextureViews are drawn in the order of the view hierarchy.
+    }
+
+    /**
+     * TextureView doesn't support backgrounds (and throws when one is set), the
+     * cleared image is transparent instead.
+     */
+    @Override
+    public void setBackgroundColor(int color) {}
+
+    @Override
+    public void onFrame(VideoFrame frame) {
+        updateFrameDimensionsAndReportEvents(frame);
+        eglRenderer.onFrame(frame);
+    }
+
+    @Override
+    protected void onMeasure(int widthSpec, int heightSpec) {
+        Point size = videoLayoutMeasure.measure(widthSpec, heightSpec, rotatedFrameWidth, rotatedFrameHeight);
+        setMeasuredDimension(size.x, size.y);
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        super.onLayout(changed, left, top, right, bottom);
+        if (bottom > top) {
+            eglRenderer.setLayoutAspectRatio((right - left) / (float) (bottom - top));
+        }
+    }
+
+    @Override
+    protected void onSizeChanged(int w, int h, int oldw, int oldh) {
+        // TextureView resets the buffer size to the view size.
+        super.onSizeChanged(w, h, oldw, oldh);
+        applyMaxSurfaceSize();
+    }
+
+    @Override
+    public void onSurfaceTextureAvailable(SurfaceTexture surfaceTexture, int width, int height) {
+        applyMaxSurfaceSize();
+        eglRenderer.createEglSurface(surfaceTexture);
+    }
+
+    @Override
+    public void onSurfaceTextureSizeChanged(SurfaceTexture surfaceTexture, int width, int height) {}
+
+    @Override
+    public boolean onSurfaceTextureDestroyed(SurfaceTexture surfaceTexture) {
+        CountDownLatch completionLatch = new CountDownLatch(1);
+        eglRenderer.releaseEglSurface(completionLatch::countDown);
+        org.webrtc.ThreadUtils.awaitUninterruptibly(completionLatch);
+
+        return true;
+    }
+
+    @Override
+    public void onSurfaceTextureUpdated(SurfaceTexture surfaceTexture) {}
+
+    private void updateFrameDimensionsAndReportEvents(VideoFrame frame) {
+        if (!isFirstFrameRendered) {
+            isFirstFrameRendered = true;
+            if (rendererEvents != null) {
+                rendererEvents.onFirstFrameRendered();
+            }
+        }
+
+        if (frameWidth != frame.getRotatedWidth() || frameHeight != frame.getRotatedHeight()
+                || frameRotation != frame.getRotation()) {
+            frameWidth = frame.getRotatedWidth();
+            frameHeight = frame.getRotatedHeight();
+            frameRotation = frame.getRotation();
+
+            if (rendererEvents != null) {
+                rendererEvents.onFrameResolutionChanged(
+                        frame.getBuffer().getWidth(), frame.getBuffer().getHeight(), frameRotation);
+            }
+
+            int width = frameWidth;
+            int height = frameHeight;
+            post(() -> {
+                rotatedFrameWidth = width;
+                rotatedFrameHeight = height;
+                requestLayout();
+            });
+        }
+    }
+
+    private void applyMaxSurfaceSize() {
+        SurfaceTexture surfaceTexture = getSurfaceTexture();
+        int width = getWidth();
+        int height = getHeight();
+
+        if (surfaceTexture == null || width == 0 || height == 0) {
+            return;
+        }
+
+        int[] size = WebRTCViewRenderer.getSurfaceSize(width, height, maxSurfaceWidth, maxSurfaceHeight);
+        surfaceTexture.setDefaultBufferSize(Math.max(1, size[0]), Math.max(1, size[1]));
+    }
+}
@@ -1,17 +1,87 @@
 package com.oney.WebRTCModule;
 
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 final class ThreadUtils {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Upper bound for the number of threads which will be used to call
+     * WebRTC APIs. The PeerConnection APIs don't run on the calling thread
+     * anyway, we only need enough threads so that a slow call on one
+     * PeerConnection doesn't hold up the others.
+     */
+    private static final int MAX_POOL_SIZE = Math.max(2, Math.min(Runtime.getRuntime().availableProcessors(), 4));
+
+    /**
+     * Bounded pool of threads backing all the serial executors below.
+     */
+    private static final ExecutorService pool;
+
+    static {
+        ThreadPoolExecutor threadPool = new ThreadPoolExecutor(MAX_POOL_SIZE,
+                MAX_POOL_SIZE,
+                30,
+                TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        return new Thread(r, "WebRTCModule-" + count.getAndIncrement());
+                    }
+                });
+        threadPool.allowCoreThreadTimeOut(true);
+        pool = threadPool;
+    }
+
+    /**
+     * Executor which will be used to call all WebRTC APIs which are not tied
+     * to a specific PeerConnection (getUserMedia, MediaStream manipulation,
+     * etc.). Tasks run one at a time, in submission order.
+     */
+    private static final SerialExecutor executor = new SerialExecutor(pool);
+
     /**
-     * Thread which will be used to call all WebRTC PeerConnection APIs. They
-     * they don't run on the calling thread anyway, we are deferring the calls
-     * to this thread to avoid (potentially) blocking the calling thread.
+     * Executors which will be used to call the APIs of a specific
+     * PeerConnection, mapped by PeerConnection ID. Tasks submitted for the
+     * same PeerConnection run one at a time, in submission order, so the
+     * ordering guarantees {@link WebRTCModule} and
+     * {@link PeerConnectionObserver} rely upon still hold; tasks for different
+     * PeerConnections may run in parallel. An executor is created along with
+     * its PeerConnection, and removed once it's closed and has run the tasks
+     * queued until then.
      */
-    private static final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static final Map<Integer, SerialExecutor> peerConnectionExecutors = new ConcurrentHashMap<>();
+
+    /**
+     * Thread which will be used to run delayed and periodic tasks, such as
+     * flushing batched data channel messages or sampling stats. The tasks
+     * are expected to be short, anything which calls into WebRTC should be
+     * forwarded to one of the executors.
+     */
+    private static final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "WebRTCModule-scheduler"));
 
     /**
      * Runs the given {@link Runnable} on the executor.
@@ -27,7 +97,9 @@ final class ThreadUtils {
      * @return Future.
      */
     public static <T> Future<T> submitToExecutor(Callable<T> callable) {
-        return executor.submit(callable);
+        FutureTask<T> task = new FutureTask<>(callable);
+        executor.execute(task);
+        return task;
     }
 
     /**
@@ -36,6 +108,201 @@ final class ThreadUtils {
      * @return Future.
      */
     public static Future<?> submitToExecutor(Runnable runnable) {
-        return executor.submit(runnable);
+        FutureTask<Void> task = new FutureTask<>(runnable, null);
+        executor.execute(task);
+        return task;
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor of the given
+     * PeerConnection.
+     * @param peerConnectionId
+     * @param runnable
+     * @return whether the task was queued, rather than dropped because the
+     * PeerConnection is unknown or disposed.
+     */
+    public static boolean runOnExecutor(int peerConnectionId, Runnable runnable) {
+        SerialExecutor executor = peerConnectionExecutors.get(peerConnectionId);
+
+        if (executor == null) {
+            Log.d(TAG, "Dropping a task for unknown PeerConnection " + peerConnectionId);
+            return false;
+        }
+
+        return executor.tryExecute(runnable);
+    }
+
+    /**
+     * Submits the given {@link Callable} to be run on the executor of the given
+     * PeerConnection.
+     * @param peerConnectionId
+     * @param callable
+     * @return Future.
+     */
+    public static <T> Future<T> submitToExecutor(int peerConnectionId, Callable<T> callable) {
+        FutureTask<T> task = new FutureTask<>(callable);
+        SerialExecutor executor = peerConnectionExecutors.get(peerConnectionId);
+
+        if (executor == null) {
+            Log.d(TAG, "Dropping a task for unknown PeerConnection " + peerConnectionId);
+            task.cancel(false);
+        } else {
+            executor.execute(task);
+        }
+
+        return task;
+    }
+
+    /**
+     * Creates the executor of the given PeerConnection, before it's created.
+     * Tasks for PeerConnections without an executor are dropped.
+     * @param peerConnectionId
+     */
+    public static void createExecutor(int peerConnectionId) {
+        peerConnectionExecutors.putIfAbsent(peerConnectionId, new SerialExecutor(pool, peerConnectionId));
+    }
+
+    /**
+     * Runs the given {@link Runnable} on the executor, once the tasks queued
+     * so far on the executors of all the PeerConnections have run, e.g. to
+     * dispose of a local track they may still be using. Doesn't wait.
+     * @param runnable
+     */
+    public static void runOnExecutorAfterPeerConnections(Runnable runnable) {
+        List<SerialExecutor> executors = new ArrayList<>(peerConnectionExecutors.values());
+        AtomicInteger pending = new AtomicInteger(executors.size() + 1);
+        Runnable countDown = () -> {
+            if (pending.decrementAndGet() == 0) {
+                executor.execute(runnable);
+            }
+        };
+
+        for (SerialExecutor peerConnectionExecutor : executors) {
+            // Closed executors still run the tasks queued before they were
+            // closed, so they have to be waited for as well.
+            peerConnectionExecutor.enqueue(countDown);
+        }
+        countDown.run();
+    }
+
+    /**
+     * Closes the executor of the given PeerConnection, once it's disposed.
+     * Tasks which are already queued will still run, those submitted
+     * afterwards (e.g. by late WebRTC callbacks) are dropped: they would
+     * otherwise run on a new executor, out of order with the queued ones.
+     * Dropped {@link Future}s are cancelled, so that nobody waits on them.
+     * @param peerConnectionId
+     */
+    public static void closeExecutor(int peerConnectionId) {
+        SerialExecutor executor = peerConnectionExecutors.get(peerConnectionId);
+
+        if (executor != null) {
+            executor.close();
+        }
+    }
+
+    /**
+     * Schedules the given {@link Runnable} to be run on the scheduler thread
+     * after the given delay.
+     * @param runnable
+     * @param delay
+     * @param unit
+     * @return ScheduledFuture.
+     */
+    public static ScheduledFuture<?> schedule(Runnable runnable, long delay, TimeUnit unit) {
+        return scheduler.schedule(runnable, delay, unit);
+    }
+
+    /**
+     * Schedules the given {@link Runnable} to be run periodically on the
+     * scheduler thread, see
+     * {@link ScheduledExecutorService#scheduleAtFixedRate}.
+     * @param runnable
+     * @param initialDelay
+     * @param period
+     * @param unit
+     * @return ScheduledFuture.
+     */
+    public static ScheduledFuture<?> scheduleAtFixedRate(
+            Runnable runnable, long initialDelay, long period, TimeUnit unit) {
+        return scheduler.scheduleAtFixedRate(runnable, initialDelay, period, unit);
+    }
+
+    /**
+     * {@link Executor} which runs the tasks one at a time, in the order they
+     * were submitted, on a (shared) backing {@code Executor}. The executor of
+     * a PeerConnection removes itself from {@link #peerConnectionExecutors}
+     * once it's closed and idle.
+     */
+    private static final class SerialExecutor implements Executor {
+        private final ArrayDeque<Runnable> tasks = new ArrayDeque<>();
+        private final Executor backingExecutor;
+        private final int peerConnectionId;
+        private Runnable active;
+        private boolean closed;
+
+        SerialExecutor(Executor backingExecutor) {
+            this(backingExecutor, -1);
+        }
+
+        SerialExecutor(Executor backingExecutor, int peerConnectionId) {
+            this.backingExecutor = backingExecutor;
+            this.peerConnectionId = peerConnectionId;
+        }
+
+        synchronized void close() {
+            closed = true;
+            Log.d(TAG, "Closed the executor of PeerConnection " + peerConnectionId);
+
+            if (active == null) {
+                peerConnectionExecutors.remove(peerConnectionId, this);
+            }
+        }
+
+        @Override
+        public void execute(Runnable runnable) {
+            tryExecute(runnable);
+        }
+
+        /**
+         * Queues the given task, unless this executor is closed.
+         * @return whether the task was queued.
+         */
+        synchronized boolean tryExecute(Runnable runnable) {
+            if (closed) {
+                Log.d(TAG, "Dropping a task submitted after the PeerConnection was disposed");
+                if (runnable instanceof Future) {
+                    ((Future<?>) runnable).cancel(false);
+                }
+                return false;
+            }
+
+            enqueue(runnable);
+            return true;
+        }
+
+        /**
+         * Queues the given task, even if this executor is closed.
+         */
+        synchronized void enqueue(Runnable runnable) {
+            tasks.add(() -> {
+                try {
+                    runnable.run();
+                } finally {
+                    scheduleNext();
+                }
+            });
+            if (active == null) {
+                scheduleNext();
+            }
+        }
+
+        private synchronized void scheduleNext() {
+            if ((active = tasks.poll()) != null) {
+                backingExecutor.execute(active);
+            } else if (closed) {
+                peerConnectionExecutors.remove(peerConnectionId, this);
+            }
+        }
     }
 }
@@ -0,0 +1,398 @@
+package com.oney.WebRTCModule;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.ReadableMap;
+import com.facebook.react.bridge.ReadableType;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.MediaStreamTrack;
+import org.webrtc.PeerConnection;
+import org.webrtc.RTCStats;
+import org.webrtc.RTCStatsReport;
+import org.webrtc.RtpSender;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adapts the capture format of local video tracks to what the encoder (and
+ * the network) can keep up with. For every sender it was started for, it
+ * periodically looks at the {@code outbound-rtp} and {@code media-source}
+ * stats and, after a number of consecutive overloaded (or underused) samples,
+ * steps the capture resolution and frame rate of the sender's track down (or
+ * back up) a ladder, relative to the track's constraints. Capturing frames
+ * only for the encoder to drop them is expensive on low-end devices. Every
+ * step is reported to JS as a {@code mediaStreamTrackCaptureAdapted} event.
+ */
+class VideoCaptureAdapter {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * The resolution and frame rate scales of each step of the ladder, from
+     * the one requested through the constraints down.
+     */
+    private static final double[] RESOLUTION_SCALES = {1.0, 0.75, 0.5, 0.5, 0.375, 0.25};
+    private static final double[] FRAME_RATE_SCALES = {1.0, 1.0, 1.0, 0.66, 0.66, 0.5};
+
+    private static final long DEFAULT_INTERVAL = 2000;
+    private static final long MIN_INTERVAL = 500;
+
+    private final WebRTCModule webRTCModule;
+    private final Map<String, Adapter> adapters = new ConcurrentHashMap<>();
+
+    VideoCaptureAdapter(WebRTCModule webRTCModule) {
+        this.webRTCModule = webRTCModule;
+    }
+
+    /**
+     * Starts adapting the capture format of the track of the given sender,
+     * replacing the previous policy if it was being adapted already.
+     *
+     * @param peerConnectionId
+     * @param senderId
+     * @param options the policy, see {@link Policy}.
+     */
+    void start(int peerConnectionId, String senderId, @Nullable ReadableMap options) {
+        Adapter adapter = new Adapter(peerConnectionId, senderId, new Policy(options));
+        Adapter previous = adapters.put(getKey(peerConnectionId, senderId), adapter);
+
+        if (previous != null) {
+            previous.cancel();
+        }
+
+        adapter.schedule();
+    }
+
+    /**
+     * Stops adapting the capture format of the track of the given sender. The
+     * capture format is left as is.
+     */
+    void stop(int peerConnectionId, String senderId) {
+        Adapter adapter = adapters.remove(getKey(peerConnectionId, senderId));
+
+        if (adapter != null) {
+            adapter.cancel();
+        }
+    }
+
+    /**
+     * Stops all the adapters of the given PeerConnection.
+     */
+    void stop(int peerConnectionId) {
+        for (Adapter adapter : adapters.values()) {
+            if (adapter.peerConnectionId == peerConnectionId) {
+                stop(peerConnectionId, adapter.senderId);
+            }
+        }
+    }
+
+    private static String getKey(int peerConnectionId, String senderId) {
+        return peerConnectionId + ":" + senderId;
+    }
+
+    private static long getLong(RTCStats stats, String member) {
+        Object value = stats.getMembers().get(member);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double getDouble(RTCStats stats, String member) {
+        Object value = stats.getMembers().get(member);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0;
+    }
+
+    /**
+     * When to step the capture format down or up. All the options are
+     * optional:
+     * <ul>
+     * <li>{@code interval}: how often the stats are sampled, in milliseconds.</li>
+     * <li>{@code downgradeSamples} / {@code upgradeSamples}: how many
+     * consecutive overloaded / underused samples cause a step down / up.</li>
+     * <li>{@code maxEncodeUsage}: the maximum encode time per frame, as a
+     * fraction of the frame interval.</li>
+     * <li>{@code maxDropRatio}: the maximum fraction of the captured frames
+     * which may not get encoded.</li>
+     * <li>{@code adaptToBandwidth}: whether the bandwidth being the quality
+     * limitation counts as overloaded, not only the CPU.</li>
+     * <li>{@code minScale} / {@code minFrameRate}: lower bounds for the
+     * resolution scale and the frame rate.</li>
+     * </ul>
+     */
+    private static final class Policy {
+        final long interval;
+        final int downgradeSamples;
+        final int upgradeSamples;
+        final double maxEncodeUsage;
+        final double maxDropRatio;
+        final boolean adaptToBandwidth;
+        final double minScale;
+        final int minFrameRate;
+
+        Policy(@Nullable ReadableMap options) {
+            interval = Math.max((long) getNumber(options, "interval", DEFAULT_INTERVAL), MIN_INTERVAL);
+            downgradeSamples = Math.max((int) getNumber(options, "downgradeSamples", 2), 1);
+            upgradeSamples = Math.max((int) getNumber(options, "upgradeSamples", 5), 1);
+            maxEncodeUsage = getNumber(options, "maxEncodeUsage", 0.8);
+            maxDropRatio = getNumber(options, "maxDropRatio", 0.1);
+            adaptToBandwidth = options == null || !options.hasKey("adaptToBandwidth")
+                    || options.getType("adaptToBandwidth") != ReadableType.Boolean
+                    || options.getBoolean("adaptToBandwidth");
+            minScale = getNumber(options, "minScale", 0.25);
+            minFrameRate = (int) getNumber(options, "minFrameRate", 10);
+        }
+
+        private static double getNumber(@Nullable ReadableMap options, String key, double defaultValue) {
+            if (options == null || !options.hasKey(key) || options.getType(key) != ReadableType.Number) {
+                return defaultValue;
+            }
+
+            return options.getDouble(key);
+        }
+
+        /**
+         * Gets the lowest step of the ladder the capture format may go down
+         * to.
+         */
+        int getMaxLevel() {
+            int level = 0;
+            while (level + 1 < RESOLUTION_SCALES.length && RESOLUTION_SCALES[level + 1] >= minScale) {
+                level++;
+            }
+            return level;
+        }
+    }
+
+    private final class Adapter {
+        final int peerConnectionId;
+        final String senderId;
+        private final Policy policy;
+        private final int maxLevel;
+
+        private ScheduledFuture<?> future;
+        private boolean cancelled;
+
+        /*
+         * The state below is only accessed from the stats callbacks, which
+         * are serialized by the sampling (one request at a time).
+         */
+        private boolean sampling;
+        @Nullable
+        private String trackId;
+        private int level;
+        private int overloadedSamples;
+        private int underusedSamples;
+        private boolean havePrevious;
+        private long previousFramesEncoded;
+        private double previousTotalEncodeTime;
+        private long previousSourceFrames;
+        private long previousTimestampUs;
+
+        Adapter(int peerConnectionId, String senderId, Policy policy) {
+            this.peerConnectionId = peerConnectionId;
+            this.senderId = senderId;
+            this.policy = policy;
+            this.maxLevel = policy.getMaxLevel();
+        }
+
+        synchronized void schedule() {
+            if (!cancelled) {
+                future = ThreadUtils.scheduleAtFixedRate(
+                        this::sample, policy.interval, policy.interval, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void cancel() {
+            cancelled = true;
+
+            if (future != null) {
+                future.cancel(false);
+                future = null;
+            }
+        }
+
+        private synchronized boolean startSampling() {
+            if (cancelled || sampling) {
+                return false;
+            }
+
+            sampling = true;
+            return true;
+        }
+
+        private synchronized void stopSampling() {
+            sampling = false;
+        }
+
+        private void sample() {
+            if (!startSampling()) {
+                return;
+            }
+
+            boolean queued = ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+                PeerConnectionObserver pco = webRTCModule.getPeerConnectionObserver(peerConnectionId);
+                PeerConnection peerConnection = pco == null ? null : pco.getPeerConnection();
+                RtpSender sender = pco == null ? null : pco.getSender(senderId);
+                MediaStreamTrack track = sender == null ? null : sender.track();
+
+                if (peerConnection == null || sender == null) {
+                    // The PeerConnection was closed or the sender removed,
+                    // there's nothing left to adapt.
+                    stopForGood();
+                    return;
+                }
+
+                if (track == null || !MediaStreamTrack.VIDEO_TRACK_KIND.equals(track.kind())) {
+                    stopSampling();
+                    return;
+                }
+
+                String trackId = track.id();
+                peerConnection.getStats(sender, report -> {
+                    try {
+                        onStats(trackId, report);
+                    } finally {
+                        stopSampling();
+                    }
+                });
+            });
+
+            if (!queued) {
+                // The executor of the PeerConnection is closed.
+                stopForGood();
+            }
+        }
+
+        private void stopForGood() {
+            Log.d(TAG, "VideoCaptureAdapter: no sender " + senderId + ", stopping");
+            stopSampling();
+            adapters.remove(getKey(peerConnectionId, senderId), this);
+            cancel();
+        }
+
+        private void onStats(String trackId, RTCStatsReport report) {
+            if (!trackId.equals(this.trackId)) {
+                // The track was replaced, start over.
+                this.trackId = trackId;
+                level = 0;
+                resetSamples();
+            }
+
+            long framesEncoded = 0;
+            double totalEncodeTime = 0;
+            long sourceFrames = 0;
+            long timestampUs = 0;
+            String limitation = "none";
+
+            for (RTCStats stats : report.getStatsMap().values()) {
+                if ("outbound-rtp".equals(stats.getType())) {
+                    // With simulcast every layer encodes every frame, so go
+                    // by the busiest one.
+                    framesEncoded = Math.max(framesEncoded, getLong(stats, "framesEncoded"));
+                    totalEncodeTime = Math.max(totalEncodeTime, getDouble(stats, "totalEncodeTime"));
+
+                    Object reason = stats.getMembers().get("qualityLimitationReason");
+                    if (reason instanceof String && !"none".equals(reason) && !"cpu".equals(limitation)) {
+                        limitation = (String) reason;
+                    }
+                } else if ("media-source".equals(stats.getType())) {
+                    sourceFrames = getLong(stats, "frames");
+                    timestampUs = (long) stats.getTimestampUs();
+                }
+            }
+
+            boolean hadPrevious = havePrevious;
+            long framesEncodedDelta = framesEncoded - previousFramesEncoded;
+            double encodeTimeDelta = totalEncodeTime - previousTotalEncodeTime;
+            long sourceFramesDelta = sourceFrames - previousSourceFrames;
+            long elapsedUs = timestampUs - previousTimestampUs;
+
+            havePrevious = true;
+            previousFramesEncoded = framesEncoded;
+            previousTotalEncodeTime = totalEncodeTime;
+            previousSourceFrames = sourceFrames;
+            previousTimestampUs = timestampUs;
+
+            if (!hadPrevious || sourceFramesDelta <= 0 || elapsedUs <= 0) {
+                return;
+            }
+
+            // Go by the time between the reports rather than the sampling
+            // interval, samples may be skipped or run late.
+            double frameInterval = elapsedUs / 1e6 / sourceFramesDelta;
+            double encodeUsage = framesEncodedDelta > 0 ? encodeTimeDelta / framesEncodedDelta / frameInterval : 0;
+            double dropRatio = Math.max(0, (double) (sourceFramesDelta - framesEncodedDelta) / sourceFramesDelta);
+
+            String reason = null;
+            if ("cpu".equals(limitation) || ("bandwidth".equals(limitation) && policy.adaptToBandwidth)) {
+                reason = limitation;
+            } else if (encodeUsage > policy.maxEncodeUsage) {
+                reason = "encodeTime";
+            } else if (dropRatio > policy.maxDropRatio) {
+                reason = "droppedFrames";
+            }
+
+            if (reason != null) {
+                underusedSamples = 0;
+                if (++overloadedSamples >= policy.downgradeSamples && level < maxLevel) {
+                    adapt(trackId, level + 1, reason);
+                }
+            } else if ("none".equals(limitation) && encodeUsage < policy.maxEncodeUsage / 2
+                    && dropRatio < policy.maxDropRatio / 2) {
+                overloadedSamples = 0;
+                if (++underusedSamples >= policy.upgradeSamples && level > 0) {
+                    adapt(trackId, level - 1, "underused");
+                }
+            } else {
+                overloadedSamples = 0;
+                underusedSamples = 0;
+            }
+        }
+
+        private void resetSamples() {
+            overloadedSamples = 0;
+            underusedSamples = 0;
+            havePrevious = false;
+        }
+
+        private void adapt(String trackId, int level, String reason) {
+            this.level = level;
+            // The stats sampled so far are for the previous format.
+            resetSamples();
+
+            double scale = RESOLUTION_SCALES[level];
+            double frameRateScale = FRAME_RATE_SCALES[level];
+
+            ThreadUtils.runOnExecutor(() -> {
+                AbstractVideoCaptureController controller = webRTCModule.getVideoCaptureController(trackId);
+                if (controller == null) {
+                    Log.d(TAG, "VideoCaptureAdapter: no capture controller for track " + trackId);
+                    return;
+                }
+
+                int width = (int) (controller.targetWidth * scale) & ~1;
+                int height = (int) (controller.targetHeight * scale) & ~1;
+                int frameRate = Math.max((int) Math.round(controller.targetFps * frameRateScale),
+                        Math.min(policy.minFrameRate, controller.targetFps));
+
+                Log.d(TAG,
+                        "VideoCaptureAdapter: track " + trackId + " to level " + level + " (" + width + "x" + height
+                                + "@" + frameRate + "), reason: " + reason);
+
+                controller.changeCaptureFormat(width, height, frameRate);
+
+                WritableMap params = Arguments.createMap();
+                params.putString("trackId", trackId);
+                params.putInt("level", level);
+                params.putString("reason", reason);
+                params.putMap("settings", controller.getSettings());
+
+                webRTCModule.sendEvent("mediaStreamTrackCaptureAdapted", params);
+            });
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.oney.WebRTCModule;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableArray;
+import com.facebook.react.bridge.WritableMap;
+
+import org.webrtc.VideoFrame;
+import org.webrtc.VideoSink;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Detects when remote video tracks stop (and resume) receiving frames, for all
+ * the PeerConnections. A single task, run every {@code muteDelay} ms on the
+ * {@link ThreadUtils} scheduler thread while there are tracks to watch, checks
+ * all of them and reports the changes as one
+ * {@code mediaStreamTracksMuteChanged} event. A track is considered muted when
+ * no frames were received since the previous check, the first check happens
+ * after {@code initialMuteDelay} ms.
+ */
+class VideoTrackMuteDetector {
+    static final String TAG = VideoTrackMuteDetector.class.getCanonicalName();
+    static final long DEFAULT_INITIAL_MUTE_DELAY = 3000;
+    static final long DEFAULT_MUTE_DELAY = 1500;
+
+    private final WebRTCModule webRTCModule;
+    private final long initialMuteDelay;
+    private final long muteDelay;
+
+    private final Set<Track> tracks = new HashSet<>();
+    private ScheduledFuture<?> tick;
+
+    VideoTrackMuteDetector(WebRTCModule webRTCModule, long initialMuteDelay, long muteDelay) {
+        this.webRTCModule = webRTCModule;
+        this.initialMuteDelay = initialMuteDelay > 0 ? initialMuteDelay : DEFAULT_INITIAL_MUTE_DELAY;
+        this.muteDelay = muteDelay > 0 ? muteDelay : DEFAULT_MUTE_DELAY;
+    }
+
+    /**
+     * Starts watching a remote video track.
+     *
+     * @return the {@link VideoSink} which needs to be added to the track, and
+     * passed to {@link #remove} once done.
+     */
+    synchronized VideoSink add(int peerConnectionId, String trackId) {
+        Track track = new Track(peerConnectionId, trackId);
+        tracks.add(track);
+
+        if (tick == null) {
+            tick = ThreadUtils.scheduleAtFixedRate(this::check, muteDelay, muteDelay, TimeUnit.MILLISECONDS);
+        }
+
+        return track;
+    }
+
+    /**
+     * Stops watching the track the given {@link VideoSink} was created for.
+     * The checks stop altogether once there are no tracks left.
+     */
+    synchronized void remove(VideoSink sink) {
+        tracks.remove(sink);
+
+        if (tracks.isEmpty() && tick != null) {
+            tick.cancel(false);
+            tick = null;
+        }
+    }
+
+    private synchronized void check() {
+        long now = SystemClock.elapsedRealtime();
+        WritableArray changes = null;
+
+        for (Track track : tracks) {
+            int frameCount = track.frameCounter.get();
+            int lastFrameCount = track.lastFrameCount;
+            track.lastFrameCount = frameCount;
+
+            if (now - track.startTime < initialMuteDelay) {
+                continue;
+            }
+
+            boolean muted = frameCount == lastFrameCount;
+            if (muted == track.muted) {
+                continue;
+            }
+
+            track.muted = muted;
+
+            Log.d(TAG,
+                    (muted ? "Mute" : "Unmute") + " event pcId: " + track.peerConnectionId
+                            + " trackId: " + track.trackId);
+
+            WritableMap change = Arguments.createMap();
+            change.putInt("pcId", track.peerConnectionId);
+            change.putString("trackId", track.trackId);
+            change.putBoolean("muted", muted);
+
+            if (changes == null) {
+                changes = Arguments.createArray();
+            }
+            changes.pushMap(change);
+        }
+
+        if (changes != null) {
+            WritableMap params = Arguments.createMap();
+            params.putArray("changes", changes);
+
+            webRTCModule.sendEvent("mediaStreamTracksMuteChanged", params);
+        }
+    }
+
+    /**
+     * Counts the frames of a remote video track through the {@link VideoSink}
+     * interface. Everything but the counter is only accessed by the detector.
+     */
+    private static class Track implements VideoSink {
+        final int peerConnectionId;
+        final String trackId;
+        final long startTime = SystemClock.elapsedRealtime();
+        final AtomicInteger frameCounter = new AtomicInteger();
+        int lastFrameCount;
+        boolean muted;
+
+        Track(int peerConnectionId, String trackId) {
+            this.peerConnectionId = peerConnectionId;
+            this.trackId = trackId;
+        }
+
+        @Override
+        public void onFrame(VideoFrame frame) {
+            frameCounter.incrementAndGet();
+        }
+    }
+}
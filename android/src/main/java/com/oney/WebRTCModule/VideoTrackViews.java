@@ -0,0 +1,262 @@
+package com.oney.WebRTCModule;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import com.facebook.react.bridge.Arguments;
+import com.facebook.react.bridge.WritableMap;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps track of the {@link WebRTCView}s rendering each video track, and
+ * reports what they need of the remote ones:
+ *
+ * - A remote track none of whose views renders it (e.g. because they were all
+ * paused while offscreen, see {@link WebRTCView#setAutoPause}) is reported as
+ * hidden with a {@code mediaStreamTrackVisibilityChanged} event, and as
+ * visible again once one does. A track which no view renders anymore isn't
+ * kept track of, its visibility is reported afresh once it gets a view again.
+ * - The largest resolution at which the views render a remote track is
+ * reported as its target resolution with a
+ * {@code mediaStreamTrackTargetResolutionChanged} event, once the layout
+ * settled.
+ *
+ * The application can forward those to the sender (or an SFU), so that it
+ * stops sending the video meanwhile or picks the smallest simulcast layer or
+ * spatial layer which is large enough. Only accessed on the UI thread.
+ */
+class VideoTrackViews {
+    private static final String TAG = WebRTCModule.TAG;
+
+    /**
+     * Time, in milliseconds, the render resolutions have to be stable for
+     * before the target resolutions are reported, so that a layout animation
+     * doesn't report every step.
+     */
+    private static final long TARGET_RESOLUTION_DELAY = 300;
+
+    private final WebRTCModule webRTCModule;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
+    /**
+     * The id of the track rendered by each view.
+     */
+    private final Map<WebRTCView, String> viewTracks = new HashMap<>();
+
+    /**
+     * The views rendering each track.
+     */
+    private final Map<String, Map<WebRTCView, ViewState>> trackViews = new HashMap<>();
+
+    /**
+     * The remote tracks with views which were reported as hidden. Tracks are
+     * visible until reported otherwise.
+     */
+    private final Set<String> hiddenTracks = new HashSet<>();
+
+    /**
+     * The target resolutions reported for the remote tracks, as
+     * {@code {width, height}}.
+     */
+    private final Map<String, int[]> targetResolutions = new HashMap<>();
+
+    /**
+     * The tracks whose target resolution may have changed.
+     */
+    private final Set<String> pendingTargetResolutions = new HashSet<>();
+
+    private final Runnable updateTargetResolutionsRunnable = this::updateTargetResolutions;
+
+    VideoTrackViews(WebRTCModule webRTCModule) {
+        this.webRTCModule = webRTCModule;
+    }
+
+    /**
+     * Updates the rendering state of a view.
+     *
+     * @param view The view.
+     * @param trackId The id of the track it renders, or {@code null} if it
+     * doesn't render any.
+     * @param rendering Whether it renders the frames of the track, i.e. it's
+     * not paused.
+     * @param renderResolution The resolution it renders the track at, as
+     * {@code {width, height}}.
+     */
+    void update(WebRTCView view, @Nullable String trackId, boolean rendering, int[] renderResolution) {
+        String oldTrackId = trackId == null ? viewTracks.remove(view) : viewTracks.put(view, trackId);
+
+        if (oldTrackId != null && !oldTrackId.equals(trackId)) {
+            Map<WebRTCView, ViewState> views = trackViews.get(oldTrackId);
+            if (views != null) {
+                views.remove(view);
+                if (views.isEmpty()) {
+                    trackViews.remove(oldTrackId);
+                }
+            }
+            updateVisibility(oldTrackId, false);
+            if (!trackViews.containsKey(oldTrackId)) {
+                // It was reported as hidden, and is reported again when it
+                // gets a view.
+                hiddenTracks.remove(oldTrackId);
+            }
+            scheduleTargetResolutionUpdate(oldTrackId);
+        }
+
+        if (trackId != null) {
+            Map<WebRTCView, ViewState> views = trackViews.get(trackId);
+            boolean firstView = views == null;
+            if (firstView) {
+                views = new HashMap<>();
+                trackViews.put(trackId, views);
+            }
+
+            ViewState state = views.get(view);
+            if (state == null) {
+                state = new ViewState();
+                views.put(view, state);
+            } else if (state.rendering == rendering && state.width == renderResolution[0]
+                    && state.height == renderResolution[1]) {
+                return;
+            }
+
+            state.rendering = rendering;
+            state.width = renderResolution[0];
+            state.height = renderResolution[1];
+
+            updateVisibility(trackId, firstView);
+            scheduleTargetResolutionUpdate(trackId);
+        }
+    }
+
+    /**
+     * Reports the visibility of a track if it changed, or in any case if
+     * {@code force} is set.
+     */
+    private void updateVisibility(String trackId, boolean force) {
+        boolean visible = false;
+        Map<WebRTCView, ViewState> views = trackViews.get(trackId);
+
+        if (views != null) {
+            for (ViewState state : views.values()) {
+                if (state.rendering) {
+                    visible = true;
+                    break;
+                }
+            }
+        }
+
+        if (visible) {
+            if (hiddenTracks.remove(trackId) || force) {
+                sendVisibilityChanged(trackId, true);
+            }
+        } else if (force || !hiddenTracks.contains(trackId)) {
+            if (sendVisibilityChanged(trackId, false)) {
+                hiddenTracks.add(trackId);
+            }
+        }
+    }
+
+    private void scheduleTargetResolutionUpdate(String trackId) {
+        pendingTargetResolutions.add(trackId);
+        handler.removeCallbacks(updateTargetResolutionsRunnable);
+        handler.postDelayed(updateTargetResolutionsRunnable, TARGET_RESOLUTION_DELAY);
+    }
+
+    private void updateTargetResolutions() {
+        for (String trackId : pendingTargetResolutions) {
+            Map<WebRTCView, ViewState> views = trackViews.get(trackId);
+
+            if (views == null) {
+                // Not rendered anymore, report it again if it is.
+                targetResolutions.remove(trackId);
+                continue;
+            }
+
+            int width = 0;
+            int height = 0;
+
+            for (ViewState state : views.values()) {
+                if (state.rendering) {
+                    width = Math.max(width, state.width);
+                    height = Math.max(height, state.height);
+                }
+            }
+
+            if (width == 0 || height == 0) {
+                // Hidden or not laid out yet, keep the last target.
+                continue;
+            }
+
+            int[] targetResolution = targetResolutions.get(trackId);
+            if (targetResolution != null && targetResolution[0] == width && targetResolution[1] == height) {
+                continue;
+            }
+
+            if (sendTargetResolutionChanged(trackId, width, height)) {
+                targetResolutions.put(trackId, new int[] {width, height});
+            }
+        }
+
+        pendingTargetResolutions.clear();
+    }
+
+    /**
+     * @return {@code false} if the track is not a remote one, in which case
+     * nothing is sent.
+     */
+    private boolean sendVisibilityChanged(String trackId, boolean visible) {
+        int pcId = webRTCModule.getRemoteTrackPeerConnectionId(trackId);
+
+        if (pcId == -1) {
+            return false;
+        }
+
+        Log.d(TAG, "VideoTrackViews: track " + trackId + (visible ? " visible" : " hidden"));
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("pcId", pcId);
+        params.putString("trackId", trackId);
+        params.putBoolean("visible", visible);
+
+        webRTCModule.sendEvent("mediaStreamTrackVisibilityChanged", params);
+
+        return true;
+    }
+
+    /**
+     * @return {@code false} if the track is not a remote one, in which case
+     * nothing is sent.
+     */
+    private boolean sendTargetResolutionChanged(String trackId, int width, int height) {
+        int pcId = webRTCModule.getRemoteTrackPeerConnectionId(trackId);
+
+        if (pcId == -1) {
+            return false;
+        }
+
+        Log.d(TAG, "VideoTrackViews: track " + trackId + " target resolution " + width + "x" + height);
+
+        WritableMap params = Arguments.createMap();
+        params.putInt("pcId", pcId);
+        params.putString("trackId", trackId);
+        params.putInt("width", width);
+        params.putInt("height", height);
+
+        webRTCModule.sendEvent("mediaStreamTrackTargetResolutionChanged", params);
+
+        return true;
+    }
+
+    private static class ViewState {
+        boolean rendering;
+        int width;
+        int height;
+    }
+}
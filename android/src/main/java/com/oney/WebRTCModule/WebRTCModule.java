@@ -2,7 +2,6 @@ package com.oney.WebRTCModule;
 
 import android.util.Log;
 import android.util.Pair;
-import android.util.SparseArray;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -23,6 +22,8 @@ import com.facebook.react.module.annotations.ReactModule;
 import com.facebook.react.modules.core.DeviceEventManagerModule;
 import com.oney.WebRTCModule.webrtcutils.H264AndSoftwareVideoDecoderFactory;
 import com.oney.WebRTCModule.webrtcutils.H264AndSoftwareVideoEncoderFactory;
+import com.oney.WebRTCModule.webrtcutils.PolicyVideoEncoderFactory;
+import com.oney.WebRTCModule.webrtcutils.VideoEncoderProbe;
 
 import org.webrtc.*;
 import org.webrtc.audio.AudioDeviceModule;
@@ -30,32 +31,59 @@ import org.webrtc.audio.JavaAudioDeviceModule;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @ReactModule(name = "WebRTCModule")
 public class WebRTCModule extends ReactContextBaseJavaModule {
     static final String TAG = WebRTCModule.class.getCanonicalName();
 
+    /**
+     * Delay, in milliseconds, before probing the video encoders, and between
+     * the checks for calls in progress, which the probe would compete with.
+     */
+    private static final long ENCODER_PROBE_DELAY = 10000;
+
     PeerConnectionFactory mFactory;
     VideoEncoderFactory mVideoEncoderFactory;
     VideoDecoderFactory mVideoDecoderFactory;
     AudioDeviceModule mAudioDeviceModule;
 
     // Need to expose the peer connection codec factories here to get capabilities
-    private final SparseArray<PeerConnectionObserver> mPeerConnectionObservers;
+    private final Map<Integer, PeerConnectionObserver> mPeerConnectionObservers;
     final Map<String, MediaStream> localStreams;
 
     private final GetUserMediaImpl getUserMediaImpl;
+    private final StatsSampler statsSampler;
+    private final VideoCaptureAdapter videoCaptureAdapter;
+    final VideoTrackViews videoTrackViews;
+    final VideoTrackMuteDetector videoTrackMuteDetector;
+    private final BlockingCallStats blockingCallStats = new BlockingCallStats();
+    private final RtpCapabilitiesCache rtpCapabilitiesCache;
+
+    /**
+     * The configurations registered with peerConnectionRegisterConfiguration,
+     * already parsed, by id. Peer connections don't modify them, so they are
+     * shared.
+     */
+    private final Map<Integer, PeerConnection.RTCConfiguration> rtcConfigurations = new ConcurrentHashMap<>();
+    private final AtomicInteger nextRtcConfigurationId = new AtomicInteger();
 
     public WebRTCModule(ReactApplicationContext reactContext) {
         super(reactContext);
 
-        mPeerConnectionObservers = new SparseArray<>();
-        localStreams = new HashMap<>();
+        mPeerConnectionObservers = new ConcurrentHashMap<>();
+        localStreams = new ConcurrentHashMap<>();
 
         WebRTCModuleOptions options = WebRTCModuleOptions.getInstance();
 
@@ -81,8 +109,24 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             EglBase.Context eglContext = EglUtils.getRootEglBaseContext();
 
             if (eglContext != null) {
-                encoderFactory = new H264AndSoftwareVideoEncoderFactory(eglContext);
-                decoderFactory = new H264AndSoftwareVideoDecoderFactory(eglContext);
+                VideoEncoderProbe encoderProbe = null;
+                if (options.probeVideoEncoders) {
+                    encoderProbe = new VideoEncoderProbe(reactContext);
+                    if (!encoderProbe.isDone()) {
+                        scheduleEncoderProbe(encoderProbe);
+                    }
+                }
+
+                if (options.videoEncoderPolicy != null) {
+                    encoderFactory =
+                            new PolicyVideoEncoderFactory(eglContext, options.videoEncoderPolicy, encoderProbe);
+                } else {
+                    encoderFactory = new H264AndSoftwareVideoEncoderFactory(eglContext, encoderProbe);
+                }
+                decoderFactory = new H264AndSoftwareVideoDecoderFactory(eglContext,
+                        options.maxHardwareVideoDecoders,
+                        options.enableHardwareVp8Decoder,
+                        options.enableHardwareVp9Decoder);
             } else {
                 encoderFactory = new SoftwareVideoEncoderFactory();
                 decoderFactory = new SoftwareVideoDecoderFactory();
@@ -111,6 +155,20 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         mAudioDeviceModule = adm;
 
         getUserMediaImpl = new GetUserMediaImpl(this, reactContext);
+
+        rtpCapabilitiesCache = new RtpCapabilitiesCache(mFactory);
+        if (options.prewarmRtpCapabilities) {
+            ThreadUtils.runOnExecutor(rtpCapabilitiesCache::prewarm);
+        }
+
+        videoTrackMuteDetector =
+                new VideoTrackMuteDetector(this, options.videoTrackInitialMuteDelay, options.videoTrackMuteDelay);
+
+        statsSampler = new StatsSampler(this);
+        reactContext.addLifecycleEventListener(statsSampler);
+
+        videoCaptureAdapter = new VideoCaptureAdapter(this);
+        videoTrackViews = new VideoTrackViews(this);
     }
 
     @NonNull
@@ -119,11 +177,37 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return "WebRTCModule";
     }
 
-    private PeerConnection getPeerConnection(int id) {
+    PeerConnection getPeerConnection(int id) {
         PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
         return (pco == null) ? null : pco.getPeerConnection();
     }
 
+    PeerConnectionObserver getPeerConnectionObserver(int id) {
+        return mPeerConnectionObservers.get(id);
+    }
+
+    /**
+     * Probes the video encoders once there are no peer connections, on a
+     * thread of its own since it takes a second or two. The probe stops if a
+     * peer connection is created meanwhile, and is scheduled again until it's
+     * done.
+     */
+    private void scheduleEncoderProbe(VideoEncoderProbe encoderProbe) {
+        ThreadUtils.schedule(() -> {
+            if (!mPeerConnectionObservers.isEmpty()) {
+                scheduleEncoderProbe(encoderProbe);
+                return;
+            }
+
+            new Thread(() -> {
+                encoderProbe.run(mPeerConnectionObservers::isEmpty);
+                if (!encoderProbe.isDone()) {
+                    scheduleEncoderProbe(encoderProbe);
+                }
+            }, "VideoEncoderProbe").start();
+        }, ENCODER_PROBE_DELAY, TimeUnit.MILLISECONDS);
+    }
+
     void sendEvent(String eventName, @Nullable ReadableMap params) {
         getReactApplicationContext()
                 .getJSModule(DeviceEventManagerModule.RCTDeviceEventEmitter.class)
@@ -376,54 +460,139 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     public boolean peerConnectionInit(ReadableMap configuration, int id) {
         PeerConnection.RTCConfiguration rtcConfiguration = parseRTCConfiguration(configuration);
 
+        ThreadUtils.createExecutor(id);
+
         try {
-            return (boolean) ThreadUtils
-                    .submitToExecutor(() -> {
-                        PeerConnectionObserver observer = new PeerConnectionObserver(this, id);
-                        PeerConnection peerConnection = mFactory.createPeerConnection(rtcConfiguration, observer);
-                        if (peerConnection == null) {
-                            return false;
-                        }
-                        observer.setPeerConnection(peerConnection);
-                        mPeerConnectionObservers.put(id, observer);
-                        return true;
-                    })
-                    .get();
+            return awaitBlocking("peerConnectionInit",
+                    ThreadUtils.submitToExecutor(id, () -> createPeerConnection(rtcConfiguration, id)));
         } catch (ExecutionException | InterruptedException e) {
             e.printStackTrace();
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Parses a configuration once, for peer connections to be created (or
+     * reconfigured) with it by id.
+     *
+     * @return The id of the configuration.
+     */
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public int peerConnectionRegisterConfiguration(ReadableMap configuration) {
+        int configurationId = nextRtcConfigurationId.incrementAndGet();
+
+        rtcConfigurations.put(configurationId, parseRTCConfiguration(configuration));
+
+        return configurationId;
+    }
+
+    @ReactMethod
+    public void peerConnectionUnregisterConfiguration(int configurationId) {
+        rtcConfigurations.remove(configurationId);
+    }
+
+    @ReactMethod(isBlockingSynchronousMethod = true)
+    public boolean peerConnectionInitWithConfiguration(int configurationId, int id) {
+        PeerConnection.RTCConfiguration rtcConfiguration = rtcConfigurations.get(configurationId);
+
+        if (rtcConfiguration == null) {
+            Log.d(TAG, "peerConnectionInitWithConfiguration() configuration " + configurationId + " not found");
+            return false;
+        }
+
+        ThreadUtils.createExecutor(id);
+
+        try {
+            return awaitBlocking("peerConnectionInit",
+                    ThreadUtils.submitToExecutor(id, () -> createPeerConnection(rtcConfiguration, id)));
+        } catch (ExecutionException | InterruptedException e) {
+            e.printStackTrace();
+            throw new RuntimeException(e);
+        }
+    }
+
+    private boolean createPeerConnection(PeerConnection.RTCConfiguration rtcConfiguration, int id) {
+        PeerConnectionObserver observer = new PeerConnectionObserver(this, id);
+        PeerConnection peerConnection = mFactory.createPeerConnection(rtcConfiguration, observer);
+        if (peerConnection == null) {
+            ThreadUtils.closeExecutor(id);
+            return false;
+        }
+        observer.setPeerConnection(peerConnection);
+        mPeerConnectionObservers.put(id, observer);
+        return true;
+    }
+
+    /**
+     * Waits for the result of a task submitted on behalf of a synchronous
+     * (blocking) method, keeping track of how long the JS thread was blocked.
+     */
+    private <T> T awaitBlocking(String methodName, Future<T> future)
+            throws ExecutionException, InterruptedException {
+        long start = System.nanoTime();
+        try {
+            return future.get();
+        } catch (CancellationException e) {
+            // Dropped, because the PeerConnection was disposed.
+            throw new ExecutionException("Cancelled, the PeerConnection was disposed", e);
+        } finally {
+            blockingCallStats.record(methodName, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Resolves how long the JS thread was blocked by the synchronous methods,
+     * per method: the number of calls and the total and maximum time (in
+     * milliseconds) spent waiting on them.
+     */
+    @ReactMethod
+    public void getBlockingCallStats(Promise promise) {
+        promise.resolve(blockingCallStats.toWritableMap());
+    }
+
     MediaStream getStreamForReactTag(String streamReactTag) {
         // This function _only_ gets called from WebRTCView, in the UI thread.
         // Hence make sure we run this code in the executor or we run at the risk
-        // of being out of sync.
+        // of being out of sync. Remote streams are looked up on the executor of
+        // their PeerConnection, which disposes of them.
         try {
-            return (MediaStream) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        MediaStream stream = localStreams.get(streamReactTag);
+            MediaStream stream = (MediaStream) ThreadUtils
+                    .submitToExecutor((Callable<Object>) () -> localStreams.get(streamReactTag))
+                    .get();
+            if (stream != null) {
+                return stream;
+            }
 
-                        if (stream != null) {
-                            return stream;
-                        }
+            for (Map.Entry<Integer, PeerConnectionObserver> entry : mPeerConnectionObservers.entrySet()) {
+                PeerConnectionObserver pco = entry.getValue();
+                if (!pco.remoteStreams.containsKey(streamReactTag)) {
+                    continue;
+                }
 
-                        for (int i = 0, size = mPeerConnectionObservers.size(); i < size; i++) {
-                            PeerConnectionObserver pco = mPeerConnectionObservers.valueAt(i);
-                            stream = pco.remoteStreams.get(streamReactTag);
-                            if (stream != null) {
-                                return stream;
-                            }
-                        }
+                return (MediaStream) ThreadUtils
+                        .submitToExecutor(entry.getKey(), (Callable<Object>) () -> pco.remoteStreams.get(streamReactTag))
+                        .get();
+            }
 
-                        return null;
-                    })
-                    .get();
-        } catch (ExecutionException | InterruptedException e) {
+            return null;
+        } catch (CancellationException | ExecutionException | InterruptedException e) {
             return null;
         }
     }
 
+    /**
+     * Runs a task using the track of the given PeerConnection (or a local track
+     * when pcId is -1) on the executor which owns it, so it is ordered with the
+     * disposal of the PeerConnection which frees its remote tracks.
+     */
+    private static void runOnTrackExecutor(int pcId, Runnable runnable) {
+        if (pcId == -1) {
+            ThreadUtils.runOnExecutor(runnable);
+        } else {
+            ThreadUtils.runOnExecutor(pcId, runnable);
+        }
+    }
+
     public MediaStreamTrack getTrack(int pcId, String trackId) {
         if (pcId == -1) {
             return getLocalTrack(trackId);
@@ -438,10 +607,29 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         return pco.remoteTracks.get(trackId);
     }
 
+    /**
+     * Gets the id of the PeerConnection which receives the given track.
+     *
+     * @return The id, or -1 if the track is not a remote one.
+     */
+    int getRemoteTrackPeerConnectionId(String trackId) {
+        for (Map.Entry<Integer, PeerConnectionObserver> entry : mPeerConnectionObservers.entrySet()) {
+            if (entry.getValue().remoteTracks.containsKey(trackId)) {
+                return entry.getKey();
+            }
+        }
+
+        return -1;
+    }
+
     MediaStreamTrack getLocalTrack(String trackId) {
         return getUserMediaImpl.getTrack(trackId);
     }
 
+    AbstractVideoCaptureController getVideoCaptureController(String trackId) {
+        return getUserMediaImpl.getVideoCaptureController(trackId);
+    }
+
     public VideoTrack createVideoTrack(AbstractVideoCaptureController videoCaptureController) {
         return getUserMediaImpl.createVideoTrack(videoCaptureController);
     }
@@ -477,123 +665,126 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap peerConnectionAddTransceiver(int id, ReadableMap options) {
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
-                        if (pco == null) {
-                            Log.d(TAG, "peerConnectionAddTransceiver() peerConnection is null");
-                            return null;
-                        }
+            return awaitBlocking("peerConnectionAddTransceiver",
+                    ThreadUtils.submitToExecutor(id, () -> addTransceiver(id, options)));
+        } catch (ExecutionException | InterruptedException e) {
+            Log.d(TAG, "peerConnectionAddTransceiver() " + e.getMessage());
+            return null;
+        }
+    }
 
-                        RtpTransceiver transceiver = null;
-                        if (options.hasKey("type")) {
-                            String kind = options.getString("type");
-                            transceiver = pco.addTransceiver(SerializeUtils.parseMediaType(kind),
-                                    SerializeUtils.parseTransceiverOptions(options.getMap("init")));
-                        } else if (options.hasKey("trackId")) {
-                            String trackId = options.getString("trackId");
-                            MediaStreamTrack track = getLocalTrack(trackId);
-                            transceiver = pco.addTransceiver(
-                                    track, SerializeUtils.parseTransceiverOptions(options.getMap("init")));
+    private WritableMap addTransceiver(int id, ReadableMap options) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        if (pco == null) {
+            Log.d(TAG, "peerConnectionAddTransceiver() peerConnection is null");
+            return null;
+        }
 
-                        } else {
-                            // This should technically never happen as the JS side checks for that.
-                            Log.d(TAG, "peerConnectionAddTransceiver() no type nor trackId provided in options");
-                            return null;
-                        }
+        RtpTransceiver transceiver = null;
+        if (options.hasKey("type")) {
+            String kind = options.getString("type");
+            transceiver = pco.addTransceiver(SerializeUtils.parseMediaType(kind),
+                    SerializeUtils.parseTransceiverOptions(options.getMap("init")));
+        } else if (options.hasKey("trackId")) {
+            String trackId = options.getString("trackId");
+            MediaStreamTrack track = getLocalTrack(trackId);
+            transceiver = pco.addTransceiver(
+                    track, SerializeUtils.parseTransceiverOptions(options.getMap("init")));
+
+        } else {
+            // This should technically never happen as the JS side checks for that.
+            Log.d(TAG, "peerConnectionAddTransceiver() no type nor trackId provided in options");
+            return null;
+        }
 
-                        if (transceiver == null) {
-                            Log.d(TAG, "peerConnectionAddTransceiver() Error adding transceiver");
-                            return null;
-                        }
-                        WritableMap params = Arguments.createMap();
-                        // We need to get a unique order at which the transceiver was created
-                        // to reorder the cached array of transceivers on the JS layer.
-                        params.putInt("transceiverOrder", pco.getNextTransceiverId());
-                        params.putMap("transceiver", SerializeUtils.serializeTransceiver(id, transceiver));
-                        return params;
-                    })
-                    .get();
-        } catch (InterruptedException | ExecutionException e) {
-            Log.d(TAG, "peerConnectionAddTransceiver() " + e.getMessage());
+        if (transceiver == null) {
+            Log.d(TAG, "peerConnectionAddTransceiver() Error adding transceiver");
             return null;
         }
+        WritableMap params = Arguments.createMap();
+        // We need to get a unique order at which the transceiver was created
+        // to reorder the cached array of transceivers on the JS layer.
+        params.putInt("transceiverOrder", pco.getNextTransceiverId());
+        params.putMap("transceiver", SerializeUtils.serializeTransceiver(id, transceiver));
+        return params;
     }
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap peerConnectionAddTrack(int id, String trackId, ReadableMap options) {
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
-                        if (pco == null) {
-                            Log.d(TAG, "peerConnectionAddTrack() peerConnection is null");
-                            return null;
-                        }
-
-                        MediaStreamTrack track = getLocalTrack(trackId);
-                        if (track == null) {
-                            Log.w(TAG, "peerConnectionAddTrack() couldn't find track " + trackId);
-                            return null;
-                        }
-
-                        List<String> streamIds = new ArrayList<>();
-                        if (options.hasKey("streamIds")) {
-                            ReadableArray rawStreamIds = options.getArray("streamIds");
-                            if (rawStreamIds != null) {
-                                for (int i = 0; i < rawStreamIds.size(); i++) {
-                                    streamIds.add(rawStreamIds.getString(i));
-                                }
-                            }
-                        }
-                        RtpSender sender = pco.getPeerConnection().addTrack(track, streamIds);
+            return awaitBlocking("peerConnectionAddTrack",
+                    ThreadUtils.submitToExecutor(id, () -> addTrack(id, trackId, options)));
+        } catch (ExecutionException | InterruptedException e) {
+            Log.d(TAG, "peerConnectionAddTrack() " + e.getMessage());
+            return null;
+        }
+    }
 
-                        // Need to get the corresponding transceiver as well
-                        RtpTransceiver transceiver = pco.getTransceiver(sender.id());
+    private WritableMap addTrack(int id, String trackId, ReadableMap options) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        if (pco == null) {
+            Log.d(TAG, "peerConnectionAddTrack() peerConnection is null");
+            return null;
+        }
 
-                        // We need the transceiver creation order to reorder the transceivers array
-                        // in the JS layer.
-                        WritableMap params = Arguments.createMap();
-                        params.putInt("transceiverOrder", pco.getNextTransceiverId());
-                        params.putMap("transceiver", SerializeUtils.serializeTransceiver(id, transceiver));
-                        params.putMap("sender", SerializeUtils.serializeSender(id, sender));
-                        return params;
-                    })
-                    .get();
-        } catch (InterruptedException | ExecutionException e) {
-            Log.d(TAG, "peerConnectionAddTrack() " + e.getMessage());
+        MediaStreamTrack track = getLocalTrack(trackId);
+        if (track == null) {
+            Log.w(TAG, "peerConnectionAddTrack() couldn't find track " + trackId);
             return null;
         }
+
+        List<String> streamIds = new ArrayList<>();
+        if (options.hasKey("streamIds")) {
+            ReadableArray rawStreamIds = options.getArray("streamIds");
+            if (rawStreamIds != null) {
+                for (int i = 0; i < rawStreamIds.size(); i++) {
+                    streamIds.add(rawStreamIds.getString(i));
+                }
+            }
+        }
+        RtpSender sender = pco.getPeerConnection().addTrack(track, streamIds);
+
+        // Need to get the corresponding transceiver as well
+        RtpTransceiver transceiver = pco.getTransceiver(sender.id());
+
+        // We need the transceiver creation order to reorder the transceivers array
+        // in the JS layer.
+        WritableMap params = Arguments.createMap();
+        params.putInt("transceiverOrder", pco.getNextTransceiverId());
+        params.putMap("transceiver", SerializeUtils.serializeTransceiver(id, transceiver));
+        params.putMap("sender", SerializeUtils.serializeSender(id, sender));
+        return params;
     }
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public boolean peerConnectionRemoveTrack(int id, String senderId) {
         try {
-            return (boolean) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
-                        if (pco == null) {
-                            Log.d(TAG, "peerConnectionRemoveTrack() peerConnection is null");
-                            return false;
-                        }
-                        RtpSender sender = pco.getSender(senderId);
-                        if (sender == null) {
-                            Log.w(TAG, "peerConnectionRemoveTrack() sender is null");
-                            return false;
-                        }
-
-                        return pco.getPeerConnection().removeTrack(sender);
-                    })
-                    .get();
-        } catch (InterruptedException | ExecutionException e) {
+            return awaitBlocking("peerConnectionRemoveTrack",
+                    ThreadUtils.submitToExecutor(id, () -> removeTrack(id, senderId)));
+        } catch (ExecutionException | InterruptedException e) {
             Log.d(TAG, "peerConnectionRemoveTrack() " + e.getMessage());
             return false;
         }
     }
 
+    private boolean removeTrack(int id, String senderId) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        if (pco == null) {
+            Log.d(TAG, "peerConnectionRemoveTrack() peerConnection is null");
+            return false;
+        }
+        RtpSender sender = pco.getSender(senderId);
+        if (sender == null) {
+            Log.w(TAG, "peerConnectionRemoveTrack() sender is null");
+            return false;
+        }
+
+        return pco.getPeerConnection().removeTrack(sender);
+    }
+
     @ReactMethod
     public void senderSetParameters(int id, String senderId, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -622,7 +813,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void transceiverStop(int id, String senderId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -648,7 +839,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void senderReplaceTrack(int id, String senderId, String trackId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             try {
                 PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
                 if (pco == null) {
@@ -676,7 +867,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void transceiverSetDirection(int id, String senderId, String direction, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             WritableMap identifier = Arguments.createMap();
             WritableMap params = Arguments.createMap();
             identifier.putInt("peerConnectionId", id);
@@ -707,64 +898,72 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public void transceiverSetCodecPreferences(int id, String senderId, ReadableArray codecPreferences) {
-        ThreadUtils.runOnExecutor(() -> {
-            WritableMap identifier = Arguments.createMap();
-            WritableMap params = Arguments.createMap();
-            identifier.putInt("peerConnectionId", id);
-            identifier.putString("transceiverId", senderId);
+        ThreadUtils.runOnExecutor(id, () -> {
             try {
-                PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
-                if (pco == null) {
-                    Log.d(TAG, "transceiverSetDirection() peerConnectionObserver is null");
-                    return;
-                }
-                RtpTransceiver transceiver = pco.getTransceiver(senderId);
-                if (transceiver == null) {
-                    Log.d(TAG, "transceiverSetDirection() transceiver is null");
-                    return;
-                }
+                setCodecPreferences(id, senderId, codecPreferences);
+            } catch (Exception e) {
+                Log.d(TAG, "transceiverSetCodecPreferences(): " + e.getMessage());
+            }
+        });
+    }
 
-                // Convert JSON codec capabilities to the actual objects.
-                RtpTransceiver.RtpTransceiverDirection direction = transceiver.getDirection();
-                List<Pair<Map<String, Object>, RtpCapabilities.CodecCapability>> availableCodecs = new ArrayList<>();
+    @ReactMethod
+    public void transceiverSetCodecPreferencesAsync(
+            int id, String senderId, ReadableArray codecPreferences, Promise promise) {
+        boolean queued = ThreadUtils.runOnExecutor(id, () -> {
+            try {
+                setCodecPreferences(id, senderId, codecPreferences);
+                promise.resolve(null);
+            } catch (Exception e) {
+                Log.d(TAG, "transceiverSetCodecPreferencesAsync(): " + e.getMessage());
+                promise.reject(e);
+            }
+        });
 
-                if (direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_RECV)
-                        || direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_ONLY)) {
-                    RtpCapabilities capabilities = mFactory.getRtpSenderCapabilities(transceiver.getMediaType());
-                    for (RtpCapabilities.CodecCapability codec : capabilities.codecs) {
-                        Map<String, Object> codecDict = SerializeUtils.serializeRtpCapabilitiesCodec(codec).toHashMap();
-                        availableCodecs.add(new Pair<>(codecDict, codec));
-                    }
-                }
+        if (!queued) {
+            promise.reject(new Exception("PeerConnection not found"));
+        }
+    }
 
-                if (direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_RECV)
-                        || direction.equals(RtpTransceiver.RtpTransceiverDirection.RECV_ONLY)) {
-                    RtpCapabilities capabilities = mFactory.getRtpReceiverCapabilities(transceiver.getMediaType());
-                    for (RtpCapabilities.CodecCapability codec : capabilities.codecs) {
-                        Map<String, Object> codecDict = SerializeUtils.serializeRtpCapabilitiesCodec(codec).toHashMap();
-                        availableCodecs.add(new Pair<>(codecDict, codec));
-                    }
-                }
+    private void setCodecPreferences(int id, String senderId, ReadableArray codecPreferences) throws Exception {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+        if (pco == null) {
+            throw new Exception("PeerConnection not found");
+        }
+        RtpTransceiver transceiver = pco.getTransceiver(senderId);
+        if (transceiver == null) {
+            throw new Exception("Transceiver not found");
+        }
 
-                // Codec preferences is order sensitive.
-                List<RtpCapabilities.CodecCapability> codecsToSet = new ArrayList<>();
+        // Convert JSON codec capabilities to the actual objects.
+        RtpTransceiver.RtpTransceiverDirection direction = transceiver.getDirection();
+        List<Pair<Map<String, Object>, RtpCapabilities.CodecCapability>> availableCodecs = new ArrayList<>();
 
-                for (int i = 0; i < codecPreferences.size(); i++) {
-                    Map<String, Object> codecPref = codecPreferences.getMap(i).toHashMap();
-                    for (Pair<Map<String, Object>, RtpCapabilities.CodecCapability> pair : availableCodecs) {
-                        Map<String, Object> availableCodecDict = pair.first;
-                        if (codecPref.equals(availableCodecDict)) {
-                            codecsToSet.add(pair.second);
-                            break;
-                        }
-                    }
-                }
+        if (direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_RECV)
+                || direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_ONLY)) {
+            availableCodecs.addAll(rtpCapabilitiesCache.getCodecs(true, transceiver.getMediaType()));
+        }
 
-                transceiver.setCodecPreferences(codecsToSet);
-            } catch (Exception e) {
-                Log.d(TAG, "transceiverSetCodecPreferences(): " + e.getMessage());
+        if (direction.equals(RtpTransceiver.RtpTransceiverDirection.SEND_RECV)
+                || direction.equals(RtpTransceiver.RtpTransceiverDirection.RECV_ONLY)) {
+            availableCodecs.addAll(rtpCapabilitiesCache.getCodecs(false, transceiver.getMediaType()));
+        }
+
+        // Codec preferences is order sensitive.
+        List<RtpCapabilities.CodecCapability> codecsToSet = new ArrayList<>();
+
+        for (int i = 0; i < codecPreferences.size(); i++) {
+            Map<String, Object> codecPref = codecPreferences.getMap(i).toHashMap();
+            for (Pair<Map<String, Object>, RtpCapabilities.CodecCapability> pair : availableCodecs) {
+                Map<String, Object> availableCodecDict = pair.first;
+                if (codecPref.equals(availableCodecDict)) {
+                    codecsToSet.add(pair.second);
+                    break;
+                }
             }
-        });
+        }
+
+        transceiver.setCodecPreferences(codecsToSet);
     }
 
     @ReactMethod
@@ -782,6 +981,14 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         ThreadUtils.runOnExecutor(() -> callback.invoke(getUserMediaImpl.enumerateDevices()));
     }
 
+    @ReactMethod
+    public void prewarmMediaDevices(Promise promise) {
+        ThreadUtils.runOnExecutor(() -> {
+            getUserMediaImpl.prewarm();
+            promise.resolve(null);
+        });
+    }
+
     @ReactMethod
     public void mediaStreamCreate(String id) {
         ThreadUtils.runOnExecutor(() -> {
@@ -792,7 +999,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamAddTrack(String streamId, int pcId, String trackId) {
-        ThreadUtils.runOnExecutor(() -> {
+        runOnTrackExecutor(pcId, () -> {
             MediaStream stream = localStreams.get(streamId);
             if (stream == null) {
                 Log.d(TAG, "mediaStreamAddTrack() could not find stream " + streamId);
@@ -805,18 +1012,26 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 return;
             }
 
-            String kind = track.kind();
-            if ("audio".equals(kind)) {
-                stream.addTrack((AudioTrack) track);
-            } else if ("video".equals(kind)) {
-                stream.addTrack((VideoTrack) track);
+            // A remote track is handled on its PeerConnection's executor, so
+            // the stream may be released concurrently on the global one.
+            synchronized (stream) {
+                if (localStreams.get(streamId) != stream) {
+                    return;
+                }
+
+                String kind = track.kind();
+                if ("audio".equals(kind)) {
+                    stream.addTrack((AudioTrack) track);
+                } else if ("video".equals(kind)) {
+                    stream.addTrack((VideoTrack) track);
+                }
             }
         });
     }
 
     @ReactMethod
     public void mediaStreamRemoveTrack(String streamId, int pcId, String trackId) {
-        ThreadUtils.runOnExecutor(() -> {
+        runOnTrackExecutor(pcId, () -> {
             MediaStream stream = localStreams.get(streamId);
             if (stream == null) {
                 Log.d(TAG, "mediaStreamRemoveTrack() could not find stream " + streamId);
@@ -829,11 +1044,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 return;
             }
 
-            String kind = track.kind();
-            if ("audio".equals(kind)) {
-                stream.removeTrack((AudioTrack) track);
-            } else if ("video".equals(kind)) {
-                stream.removeTrack((VideoTrack) track);
+            // A remote track is handled on its PeerConnection's executor, so
+            // the stream may be released concurrently on the global one.
+            synchronized (stream) {
+                if (localStreams.get(streamId) != stream) {
+                    return;
+                }
+
+                String kind = track.kind();
+                if ("audio".equals(kind)) {
+                    stream.removeTrack((AudioTrack) track);
+                } else if ("video".equals(kind)) {
+                    stream.removeTrack((VideoTrack) track);
+                }
             }
         });
     }
@@ -846,8 +1069,10 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 Log.d(TAG, "mediaStreamRelease() stream is null");
                 return;
             }
-            localStreams.remove(id);
-            stream.dispose();
+            synchronized (stream) {
+                localStreams.remove(id);
+                stream.dispose();
+            }
         });
     }
 
@@ -860,13 +1085,15 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 return;
             }
             track.setEnabled(false);
-            getUserMediaImpl.disposeTrack(id);
+            // The PeerConnection executors may still have tasks using the
+            // track queued (e.g. replaceTrack), dispose of it after them.
+            ThreadUtils.runOnExecutorAfterPeerConnections(() -> getUserMediaImpl.disposeTrack(id));
         });
     }
 
     @ReactMethod
     public void mediaStreamTrackSetEnabled(int pcId, String id, boolean enabled) {
-        ThreadUtils.runOnExecutor(() -> {
+        runOnTrackExecutor(pcId, () -> {
             MediaStreamTrack track = getTrack(pcId, id);
             if (track == null) {
                 Log.d(TAG, "mediaStreamTrackSetEnabled() could not find track " + id);
@@ -895,7 +1122,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void mediaStreamTrackSetVolume(int pcId, String id, double volume) {
-        ThreadUtils.runOnExecutor(() -> {
+        runOnTrackExecutor(pcId, () -> {
             MediaStreamTrack track = getTrack(pcId, id);
             if (track == null) {
                 Log.d(TAG, "mediaStreamTrackSetVolume() could not find track " + id);
@@ -915,10 +1142,10 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
      * This serializes the transceivers current direction and mid and returns them
      * for update when an sdp negotiation/renegotiation happens
      */
-    private ReadableArray getTransceiversInfo(PeerConnection peerConnection) {
+    private ReadableArray getTransceiversInfo(List<RtpTransceiver> transceivers) {
         WritableArray transceiverUpdates = Arguments.createArray();
 
-        for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+        for (RtpTransceiver transceiver : transceivers) {
             WritableMap transceiverUpdate = Arguments.createMap();
 
             RtpTransceiver.RtpTransceiverDirection direction = transceiver.getCurrentDirection();
@@ -945,8 +1172,34 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     }
 
     @ReactMethod
-    public void peerConnectionSetConfiguration(ReadableMap configuration, int id) {
+    public void mediaStreamTrackSetVideoEffects(String id, @Nullable ReadableArray names, @Nullable ReadableMap options) {
         ThreadUtils.runOnExecutor(() -> {
+            List<String> effects = null;
+
+            if (names != null) {
+                effects = new ArrayList<>(names.size());
+                for (int i = 0; i < names.size(); i++) {
+                    effects.add(names.getString(i));
+                }
+            }
+
+            boolean async = options != null && options.hasKey("async") && options.getBoolean("async");
+            long passthroughTimeout = options != null && options.hasKey("passthroughTimeout")
+                    ? (long) options.getDouble("passthroughTimeout")
+                    : 0;
+
+            getUserMediaImpl.setVideoEffects(id, effects, async, passthroughTimeout);
+        });
+    }
+
+    @ReactMethod
+    public void mediaStreamTrackGetVideoEffectStats(String id, Promise promise) {
+        ThreadUtils.runOnExecutor(() -> promise.resolve(getUserMediaImpl.getVideoEffectStats(id)));
+    }
+
+    @ReactMethod
+    public void peerConnectionSetConfiguration(ReadableMap configuration, int id) {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnection peerConnection = getPeerConnection(id);
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionSetConfiguration() peerConnection is null");
@@ -956,9 +1209,25 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         });
     }
 
+    @ReactMethod
+    public void peerConnectionSetRegisteredConfiguration(int configurationId, int id) {
+        // Resolve the configuration right away, it may be released before the
+        // task runs.
+        PeerConnection.RTCConfiguration rtcConfiguration = rtcConfigurations.get(configurationId);
+
+        ThreadUtils.runOnExecutor(id, () -> {
+            PeerConnection peerConnection = getPeerConnection(id);
+            if (peerConnection == null || rtcConfiguration == null) {
+                Log.d(TAG, "peerConnectionSetRegisteredConfiguration() peerConnection or configuration is null");
+                return;
+            }
+            peerConnection.setConfiguration(rtcConfiguration);
+        });
+    }
+
     @ReactMethod
     public void peerConnectionCreateOffer(int id, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             PeerConnection peerConnection = pco.getPeerConnection();
 
@@ -968,31 +1237,33 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                 return;
             }
 
-            List<String> receiversIds = new ArrayList<>();
-            for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+            Set<String> receiversIds = new HashSet<>();
+            for (RtpTransceiver transceiver : pco.getTransceivers()) {
                 receiversIds.add(transceiver.getReceiver().id());
             }
 
             final SdpObserver observer = new SdpObserver() {
                 @Override
                 public void onCreateFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(id, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
 
                 @Override
                 public void onCreateSuccess(SessionDescription sdp) {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, () -> {
                         WritableMap params = Arguments.createMap();
                         WritableMap sdpInfo = Arguments.createMap();
 
                         sdpInfo.putString("sdp", sdp.description);
                         sdpInfo.putString("type", sdp.type.canonicalForm());
 
-                        params.putArray("transceiversInfo", getTransceiversInfo(peerConnection));
+                        List<RtpTransceiver> transceivers = pco.getTransceivers();
+
+                        params.putArray("transceiversInfo", getTransceiversInfo(transceivers));
                         params.putMap("sdpInfo", sdpInfo);
 
                         WritableArray newTransceivers = Arguments.createArray();
-                        for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+                        for (RtpTransceiver transceiver : transceivers) {
                             if (!receiversIds.contains(transceiver.getReceiver().id())) {
                                 WritableMap newTransceiver = Arguments.createMap();
                                 newTransceiver.putInt("transceiverOrder", pco.getNextTransceiverId());
@@ -1021,8 +1292,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionCreateAnswer(int id, ReadableMap options, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
-            PeerConnection peerConnection = getPeerConnection(id);
+        ThreadUtils.runOnExecutor(id, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
+            PeerConnection peerConnection = pco == null ? null : pco.getPeerConnection();
 
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionCreateAnswer() peerConnection is null");
@@ -1033,19 +1305,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             final SdpObserver observer = new SdpObserver() {
                 @Override
                 public void onCreateFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(id, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
 
                 @Override
                 public void onCreateSuccess(SessionDescription sdp) {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, () -> {
                         WritableMap params = Arguments.createMap();
                         WritableMap sdpInfo = Arguments.createMap();
 
                         sdpInfo.putString("sdp", sdp.description);
                         sdpInfo.putString("type", sdp.type.canonicalForm());
 
-                        params.putArray("transceiversInfo", getTransceiversInfo(peerConnection));
+                        params.putArray("transceiversInfo", getTransceiversInfo(pco.getTransceivers()));
                         params.putMap("sdpInfo", sdpInfo);
 
                         promise.resolve(params);
@@ -1065,8 +1337,9 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionSetLocalDescription(int pcId, ReadableMap desc, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
-            PeerConnection peerConnection = getPeerConnection(pcId);
+        ThreadUtils.runOnExecutor(pcId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
+            PeerConnection peerConnection = pco == null ? null : pco.getPeerConnection();
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionSetLocalDescription() peerConnection is null");
                 promise.reject(new Exception("PeerConnection not found"));
@@ -1079,7 +1352,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(pcId, () -> {
                         WritableMap newSdpMap = Arguments.createMap();
                         WritableMap params = Arguments.createMap();
 
@@ -1091,7 +1364,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                         }
 
                         params.putMap("sdpInfo", newSdpMap);
-                        params.putArray("transceiversInfo", getTransceiversInfo(peerConnection));
+                        params.putArray("transceiversInfo", getTransceiversInfo(pco.getTransceivers()));
 
                         promise.resolve(params);
                     });
@@ -1102,7 +1375,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(pcId, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             };
 
@@ -1120,7 +1393,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionSetRemoteDescription(int id, ReadableMap desc, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             PeerConnection peerConnection = pco.getPeerConnection();
 
@@ -1133,8 +1406,8 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             SessionDescription sdp = new SessionDescription(
                     SessionDescription.Type.fromCanonicalForm(desc.getString("type")), desc.getString("sdp"));
 
-            List<String> receiversIds = new ArrayList<>();
-            for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+            Set<String> receiversIds = new HashSet<>();
+            for (RtpTransceiver transceiver : pco.getTransceivers()) {
                 receiversIds.add(transceiver.getReceiver().id());
             }
 
@@ -1144,7 +1417,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(id, () -> {
                         WritableMap newSdpMap = Arguments.createMap();
                         WritableMap params = Arguments.createMap();
 
@@ -1155,11 +1428,13 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
                             newSdpMap.putString("sdp", newSdp.description);
                         }
 
-                        params.putArray("transceiversInfo", getTransceiversInfo(peerConnection));
+                        List<RtpTransceiver> transceivers = pco.getTransceivers();
+
+                        params.putArray("transceiversInfo", getTransceiversInfo(transceivers));
                         params.putMap("sdpInfo", newSdpMap);
 
                         WritableArray newTransceivers = Arguments.createArray();
-                        for (RtpTransceiver transceiver : peerConnection.getTransceivers()) {
+                        for (RtpTransceiver transceiver : transceivers) {
                             if (!receiversIds.contains(transceiver.getReceiver().id())) {
                                 WritableMap newTransceiver = Arguments.createMap();
                                 newTransceiver.putInt("transceiverOrder", pco.getNextTransceiverId());
@@ -1180,7 +1455,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onSetFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(id, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             };
 
@@ -1190,55 +1465,57 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap receiverGetCapabilities(String kind) {
+        // The capabilities are cached, there is no need to go through the
+        // executor, which may be busy.
+        long start = System.nanoTime();
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        MediaStreamTrack.MediaType mediaType;
-                        if (kind.equals("audio")) {
-                            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
-                        } else if (kind.equals("video")) {
-                            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO;
-                        } else {
-                            return Arguments.createMap();
-                        }
+            return getReceiverCapabilities(kind);
+        } finally {
+            blockingCallStats.record("receiverGetCapabilities", System.nanoTime() - start);
+        }
+    }
 
-                        RtpCapabilities capabilities = mFactory.getRtpReceiverCapabilities(mediaType);
-                        return SerializeUtils.serializeRtpCapabilities(capabilities);
-                    })
-                    .get();
-        } catch (ExecutionException | InterruptedException e) {
-            Log.d(TAG, "receiverGetCapabilities() " + e.getMessage());
-            return null;
+    private WritableMap getReceiverCapabilities(String kind) {
+        MediaStreamTrack.MediaType mediaType;
+        if (kind.equals("audio")) {
+            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
+        } else if (kind.equals("video")) {
+            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO;
+        } else {
+            return Arguments.createMap();
         }
+
+        return rtpCapabilitiesCache.getSerializedCapabilities(false, mediaType);
     }
 
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap senderGetCapabilities(String kind) {
+        // The capabilities are cached, there is no need to go through the
+        // executor, which may be busy.
+        long start = System.nanoTime();
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        MediaStreamTrack.MediaType mediaType;
-                        if (kind.equals("audio")) {
-                            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
-                        } else if (kind.equals("video")) {
-                            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO;
-                        } else {
-                            return Arguments.createMap();
-                        }
+            return getSenderCapabilities(kind);
+        } finally {
+            blockingCallStats.record("senderGetCapabilities", System.nanoTime() - start);
+        }
+    }
 
-                        RtpCapabilities capabilities = mFactory.getRtpSenderCapabilities(mediaType);
-                        return SerializeUtils.serializeRtpCapabilities(capabilities);
-                    })
-                    .get();
-        } catch (ExecutionException | InterruptedException e) {
-            Log.d(TAG, "senderGetCapabilities() " + e.getMessage());
-            return null;
+    private WritableMap getSenderCapabilities(String kind) {
+        MediaStreamTrack.MediaType mediaType;
+        if (kind.equals("audio")) {
+            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_AUDIO;
+        } else if (kind.equals("video")) {
+            mediaType = MediaStreamTrack.MediaType.MEDIA_TYPE_VIDEO;
+        } else {
+            return Arguments.createMap();
         }
+
+        return rtpCapabilitiesCache.getSerializedCapabilities(true, mediaType);
     }
 
     @ReactMethod
     public void receiverGetStats(int pcId, String receiverId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "receiverGetStats() peerConnection is null");
@@ -1251,7 +1528,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void senderGetStats(int pcId, String senderId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(pcId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "senderGetStats() peerConnection is null");
@@ -1262,9 +1539,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         });
     }
 
+    @ReactMethod
+    public void senderStartCaptureAdaptation(int pcId, String senderId, @Nullable ReadableMap options) {
+        videoCaptureAdapter.start(pcId, senderId, options);
+    }
+
+    @ReactMethod
+    public void senderStopCaptureAdaptation(int pcId, String senderId) {
+        videoCaptureAdapter.stop(pcId, senderId);
+    }
+
     @ReactMethod
     public void peerConnectionAddICECandidate(int pcId, ReadableMap candidateMap, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             PeerConnection peerConnection = getPeerConnection(pcId);
             if (peerConnection == null) {
                 Log.d(TAG, "peerConnectionAddICECandidate() peerConnection is null");
@@ -1285,7 +1572,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
             peerConnection.addIceCandidate(candidate, new AddIceObserver() {
                 @Override
                 public void onAddSuccess() {
-                    ThreadUtils.runOnExecutor(() -> {
+                    ThreadUtils.runOnExecutor(pcId, () -> {
                         WritableMap newSdpMap = Arguments.createMap();
                         SessionDescription newSdp = peerConnection.getRemoteDescription();
                         newSdpMap.putString("type", newSdp.type.canonicalForm());
@@ -1296,7 +1583,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
                 @Override
                 public void onAddFailure(String s) {
-                    ThreadUtils.runOnExecutor(() -> { promise.reject("E_OPERATION_ERROR", s); });
+                    ThreadUtils.runOnExecutor(pcId, () -> { promise.reject("E_OPERATION_ERROR", s); });
                 }
             });
         });
@@ -1304,7 +1591,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionGetStats(int peerConnectionId, Promise promise) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "peerConnectionGetStats() peerConnection is null");
@@ -1315,9 +1602,32 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         });
     }
 
+    @ReactMethod
+    public void peerConnectionGetStatsDelta(int peerConnectionId, boolean reset, Promise promise) {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "peerConnectionGetStatsDelta() peerConnection is null");
+                promise.resolve(StringUtils.statsDeltaToJSON(new RTCStatsReport(0, new HashMap<>()), null));
+            } else {
+                pco.getStatsDelta(reset, promise);
+            }
+        });
+    }
+
+    @ReactMethod
+    public void peerConnectionStartStatsSampler(int peerConnectionId, @Nullable ReadableMap options) {
+        statsSampler.start(peerConnectionId, options);
+    }
+
+    @ReactMethod
+    public void peerConnectionStopStatsSampler(int peerConnectionId) {
+        statsSampler.stop(peerConnectionId);
+    }
+
     @ReactMethod
     public void peerConnectionClose(int id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "peerConnectionClose() peerConnection is null");
@@ -1329,19 +1639,24 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void peerConnectionDispose(int id) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(id, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(id);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "peerConnectionDispose() peerConnection is null");
             }
-            pco.dispose();
+            statsSampler.stop(id);
+            videoCaptureAdapter.stop(id);
+            if (pco != null) {
+                pco.dispose();
+            }
             mPeerConnectionObservers.remove(id);
+            ThreadUtils.closeExecutor(id);
         });
     }
 
     @ReactMethod
     public void peerConnectionRestartIce(int pcId) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(pcId, () -> {
             PeerConnection peerConnection = getPeerConnection(pcId);
             if (peerConnection == null) {
                 Log.w(TAG, "peerConnectionRestartIce() peerConnection is null");
@@ -1355,25 +1670,27 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
     @ReactMethod(isBlockingSynchronousMethod = true)
     public WritableMap createDataChannel(int peerConnectionId, String label, ReadableMap config) {
         try {
-            return (WritableMap) ThreadUtils
-                    .submitToExecutor((Callable<Object>) () -> {
-                        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
-                        if (pco == null || pco.getPeerConnection() == null) {
-                            Log.d(TAG, "createDataChannel() peerConnection is null");
-                            return null;
-                        } else {
-                            return pco.createDataChannel(label, config);
-                        }
-                    })
-                    .get();
+            return awaitBlocking("createDataChannel",
+                    ThreadUtils.submitToExecutor(
+                            peerConnectionId, () -> createDataChannelInternal(peerConnectionId, label, config)));
         } catch (ExecutionException | InterruptedException e) {
             return null;
         }
     }
 
+    private WritableMap createDataChannelInternal(int peerConnectionId, String label, ReadableMap config) {
+        PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+        if (pco == null || pco.getPeerConnection() == null) {
+            Log.d(TAG, "createDataChannel() peerConnection is null");
+            return null;
+        } else {
+            return pco.createDataChannel(label, config);
+        }
+    }
+
     @ReactMethod
     public void dataChannelClose(int peerConnectionId, String reactTag) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
             // Forward to PeerConnectionObserver which deals with DataChannels
             // because DataChannel is owned by PeerConnection.
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
@@ -1388,7 +1705,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelDispose(int peerConnectionId, String reactTag) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
             if (pco == null || pco.getPeerConnection() == null) {
                 Log.d(TAG, "dataChannelDispose() peerConnection is null");
@@ -1401,7 +1718,7 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
 
     @ReactMethod
     public void dataChannelSend(int peerConnectionId, String reactTag, String data, String type) {
-        ThreadUtils.runOnExecutor(() -> {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
             // Forward to PeerConnectionObserver which deals with DataChannels
             // because DataChannel is owned by PeerConnection.
             PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
@@ -1414,6 +1731,19 @@ public class WebRTCModule extends ReactContextBaseJavaModule {
         });
     }
 
+    @ReactMethod
+    public void dataChannelSetMessageBatching(int peerConnectionId, String reactTag, @Nullable ReadableMap options) {
+        ThreadUtils.runOnExecutor(peerConnectionId, () -> {
+            PeerConnectionObserver pco = mPeerConnectionObservers.get(peerConnectionId);
+            if (pco == null || pco.getPeerConnection() == null) {
+                Log.d(TAG, "dataChannelSetMessageBatching() peerConnection is null");
+                return;
+            }
+
+            pco.dataChannelSetMessageBatching(reactTag, options);
+        });
+    }
+
     @ReactMethod
     public void addListener(String eventName) {
         // Keep: Required for RN built in Event Emitter Calls.
@@ -1,5 +1,7 @@
 package com.oney.WebRTCModule;
 
+import com.oney.WebRTCModule.webrtcutils.VideoEncoderPolicy;
+
 import org.webrtc.Loggable;
 import org.webrtc.Logging;
 import org.webrtc.VideoDecoderFactory;
@@ -16,6 +18,26 @@ public class WebRTCModuleOptions {
     public Logging.Severity loggingSeverity;
     public String fieldTrials;
     public boolean enableMediaProjectionService;
+    // Remote video tracks are reported as muted when no frames were received for this long (ms).
+    public long videoTrackInitialMuteDelay = VideoTrackMuteDetector.DEFAULT_INITIAL_MUTE_DELAY;
+    public long videoTrackMuteDelay = VideoTrackMuteDetector.DEFAULT_MUTE_DELAY;
+    // Compute the RTP capabilities (which queries the codecs) in the background at startup.
+    public boolean prewarmRtpCapabilities;
+    // Render the RTCViews with TextureViews sharing a single render thread and EGL context, rather than with a
+    // SurfaceView (and a render thread and EGL context) each. Meant for screens with many videos.
+    public boolean useTextureViewRenderer;
+    // The maximum number of live hardware video decoders of each codec, past which streams are decoded in software.
+    // 0 for the limit reported by the device.
+    public int maxHardwareVideoDecoders;
+    // Decode VP8 / VP9 in hardware when the device can, rather than in software.
+    public boolean enableHardwareVp8Decoder;
+    public boolean enableHardwareVp9Decoder;
+    // Measure the hardware video encoders once per system build (in the background) and leave out those which fail
+    // or are too slow.
+    public boolean probeVideoEncoders;
+    // Which encoders to use for each codec, hardware or software, when videoEncoderFactory is not set. H.264 in
+    // hardware and the rest in software if not set either.
+    public VideoEncoderPolicy videoEncoderPolicy;
 
     public static WebRTCModuleOptions getInstance() {
         if (instance == null) {
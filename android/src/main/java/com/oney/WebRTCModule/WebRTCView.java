@@ -4,9 +4,13 @@ import android.annotation.SuppressLint;
 import android.content.Context;
 import android.graphics.Color;
 import android.graphics.Point;
+import android.graphics.Rect;
 import android.util.Log;
 import android.view.View;
 import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import androidx.annotation.NonNull;
 
 import androidx.core.view.ViewCompat;
 
@@ -47,28 +51,60 @@ public class WebRTCView extends ViewGroup {
     private static final String TAG = WebRTCModule.TAG;
 
     /**
-     * The number of instances for {@link SurfaceViewRenderer}, used for logging.
-     * When the renderer is initialized, it creates a new {@link javax.microedition.khronos.egl.EGLContext}
+     * The number of initialized renderers, used for logging.
+     * When a {@link SurfaceViewRenderer} is initialized, it creates a new {@link javax.microedition.khronos.egl.EGLContext}
      * which can throw an exception, probably due to memory limitations. We log the number of instances that can
-     * be created before the exception is thrown.
+     * be created before the exception is thrown. {@link TextureViewRenderer}s share a single context instead.
+     */
+    private static int rendererInstances;
+
+    /**
+     * The number of paused instances, used for logging.
+     */
+    private static int pausedInstances;
+
+    /**
+     * Whether this {@code WebRTCView} stops rendering while it's not visible,
+     * see {@link #setAutoPause}.
      */
-    private static int surfaceViewRendererInstances;
+    private boolean autoPause;
+
+    /**
+     * Indicates if the sink of {@link #renderer} is removed from the video
+     * track because this {@code WebRTCView} is not visible.
+     */
+    private boolean paused;
+
+    /**
+     * Listens to the changes which may affect the visibility of this
+     * {@code WebRTCView}: the scrolling and the layout of the window.
+     */
+    private final ViewTreeObserver.OnScrollChangedListener onScrollChangedListener = this::updatePaused;
+    private final ViewTreeObserver.OnGlobalLayoutListener onGlobalLayoutListener = this::updatePaused;
+
+    private final Rect visibleRect = new Rect();
+
+    /**
+     * The maximum rate, in frames per second, at which {@link #videoTrack} is
+     * rendered, or {@code 0} for no maximum.
+     */
+    private float maxFps;
 
     /**
      * The height of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #renderer}.
      */
     private int frameHeight;
 
     /**
      * The rotation (degree) of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #renderer}.
      */
     private int frameRotation;
 
     /**
      * The width of the last video frame rendered by
-     * {@link #surfaceViewRenderer}.
+     * {@link #renderer}.
      */
     private int frameWidth;
 
@@ -86,14 +122,14 @@ public class WebRTCView extends ViewGroup {
     private boolean mirror;
 
     /**
-     * Indicates if the {@link SurfaceViewRenderer} is attached to the video
+     * Indicates if the {@link #renderer} is attached to the video
      * track.
      */
     private boolean rendererAttached;
 
     /**
      * The {@code RendererEvents} which listens to rendering events reported by
-     * {@link #surfaceViewRenderer}.
+     * {@link #renderer}.
      */
     private final RendererEvents rendererEvents = new RendererEvents() {
         @Override
@@ -109,14 +145,14 @@ public class WebRTCView extends ViewGroup {
 
     /**
      * The {@code Runnable} representation of
-     * {@link #requestSurfaceViewRendererLayout()}. Explicitly defined in order
+     * {@link #requestRendererLayout()}. Explicitly defined in order
      * to allow the use of the latter with {@link #post(Runnable)} without
      * initializing new instances on every (method) call.
      */
-    private final Runnable requestSurfaceViewRendererLayoutRunnable = new Runnable() {
+    private final Runnable requestRendererLayoutRunnable = new Runnable() {
         @Override
         public void run() {
-            requestSurfaceViewRendererLayout();
+            requestRendererLayout();
         }
     };
 
@@ -137,30 +173,47 @@ public class WebRTCView extends ViewGroup {
      * The {@link View} and {@link VideoSink} implementation which
      * actually renders {@link #videoTrack} on behalf of this instance.
      */
-    private final SurfaceViewRenderer surfaceViewRenderer;
+    private final WebRTCViewRenderer renderer;
 
     /**
      * The {@code VideoTrack}, if any, rendered by this {@code WebRTCView}.
      */
     private VideoTrack videoTrack;
 
+    /**
+     * The id of {@link #videoTrack}, which can't be queried anymore once the
+     * track is disposed.
+     */
+    private String videoTrackId;
+
+    /**
+     * The id of the PeerConnection which {@link #videoTrack} was received on,
+     * or -1 if it's a local track. The sink of a remote track is added and
+     * removed on the executor of its PeerConnection, which disposes of it.
+     */
+    private int videoTrackPeerConnectionId = -1;
+
     public WebRTCView(Context context) {
         super(context);
 
-        surfaceViewRenderer = new SurfaceViewRenderer(context);
-        addView(surfaceViewRenderer);
+        if (WebRTCModuleOptions.getInstance().useTextureViewRenderer) {
+            renderer = new TextureViewRenderer(context);
+        } else {
+            renderer = new ScaledSurfaceViewRenderer(context);
+        }
+        addView(renderer.getView());
 
         setMirror(false);
         setScalingType(DEFAULT_SCALING_TYPE);
     }
 
     /**
-     * "Cleans" the {@code SurfaceViewRenderer} by setting the view part to
+     * "Cleans" the {@code renderer} by setting the view part to
      * opaque black and the surface part to transparent.
      */
-    private void cleanSurfaceViewRenderer() {
-        surfaceViewRenderer.setBackgroundColor(Color.BLACK);
-        surfaceViewRenderer.clearImage();
+    private void cleanRenderer() {
+        renderer.setBackgroundColor(Color.BLACK);
+        renderer.clearImage();
     }
 
     private VideoTrack getVideoTrackForStreamURL(String streamURL) {
@@ -199,10 +252,18 @@ public class WebRTCView extends ViewGroup {
         } finally {
             super.onAttachedToWindow();
         }
+
+        ViewTreeObserver viewTreeObserver = getViewTreeObserver();
+        viewTreeObserver.addOnScrollChangedListener(onScrollChangedListener);
+        viewTreeObserver.addOnGlobalLayoutListener(onGlobalLayoutListener);
     }
 
     @Override
     protected void onDetachedFromWindow() {
+        ViewTreeObserver viewTreeObserver = getViewTreeObserver();
+        viewTreeObserver.removeOnScrollChangedListener(onScrollChangedListener);
+        viewTreeObserver.removeOnGlobalLayoutListener(onGlobalLayoutListener);
+
         try {
             // Generally, OpenGL is only necessary while this View is attached
             // to a window so there is no point in having the whole rendering
@@ -213,10 +274,31 @@ public class WebRTCView extends ViewGroup {
         } finally {
             super.onDetachedFromWindow();
         }
+
+        // A detached view doesn't render either way, whether it's paused is
+        // determined again once it's attached and laid out.
+        if (paused) {
+            paused = false;
+            pausedInstances--;
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        // The window is hidden when the app goes to the background, among
+        // others.
+        updatePaused();
+    }
+
+    @Override
+    protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        updatePaused();
     }
 
     /**
-     * Callback fired by {@link #surfaceViewRenderer} when the first frame is
+     * Callback fired by {@link #renderer} when the first frame is
      * rendered. Here we will set the background of the view part of the
      * SurfaceView to transparent, so the surface (where video is actually
      * rendered) shines through.
@@ -224,12 +306,12 @@ public class WebRTCView extends ViewGroup {
     private void onFirstFrameRendered() {
         post(() -> {
             Log.d(TAG, "First frame rendered.");
-            surfaceViewRenderer.setBackgroundColor(Color.TRANSPARENT);
+            renderer.setBackgroundColor(Color.TRANSPARENT);
         });
     }
 
     /**
-     * Callback fired by {@link #surfaceViewRenderer} when the resolution or
+     * Callback fired by {@link #renderer} when the resolution or
      * rotation of the frame it renders has changed.
      *
      * @param videoWidth The new width of the rendered video frame.
@@ -255,8 +337,8 @@ public class WebRTCView extends ViewGroup {
         }
         if (changed) {
             // The onFrameResolutionChanged method call executes on the
-            // surfaceViewRenderer's render Thread.
-            post(requestSurfaceViewRendererLayoutRunnable);
+            // renderer's render Thread.
+            post(requestRendererLayoutRunnable);
         }
     }
 
@@ -282,7 +364,7 @@ public class WebRTCView extends ViewGroup {
 
             switch (scalingType) {
                 case SCALE_ASPECT_FILL:
-                    // Fill this ViewGroup with surfaceViewRenderer and the latter
+                    // Fill this ViewGroup with renderer and the latter
                     // will take care of filling itself with the video similarly to
                     // the cover value the CSS property object-fit.
                     r = width;
@@ -292,7 +374,7 @@ public class WebRTCView extends ViewGroup {
                     break;
                 case SCALE_ASPECT_FIT:
                 default:
-                    // Lay surfaceViewRenderer out inside this ViewGroup in accord
+                    // Lay renderer out inside this ViewGroup in accord
                     // with the contain value of the CSS property object-fit.
                     // SurfaceViewRenderer will fill itself with the video similarly
                     // to the cover or contain value of the CSS property object-fit
@@ -313,7 +395,11 @@ public class WebRTCView extends ViewGroup {
                     break;
             }
         }
-        surfaceViewRenderer.layout(l, t, r, b);
+        renderer.getView().layout(l, t, r, b);
+
+        if (rendererAttached) {
+            updateVideoTrackViews();
+        }
     }
 
     /**
@@ -323,42 +409,35 @@ public class WebRTCView extends ViewGroup {
     private void removeRendererFromVideoTrack() {
         if (rendererAttached) {
             if (videoTrack != null) {
-                ThreadUtils.runOnExecutor(() -> {
-                    try {
-                        videoTrack.removeSink(surfaceViewRenderer);
-                    } catch (Throwable tr) {
-                        // XXX If WebRTCModule#mediaStreamTrackRelease has already been
-                        // invoked on videoTrack, then it is no longer safe to call removeSink
-                        // on the instance, it will throw IllegalStateException.
-                    }
-                });
+                removeSink();
             }
 
-            surfaceViewRenderer.release();
-            surfaceViewRendererInstances--;
+            renderer.release();
+            rendererInstances--;
             rendererAttached = false;
+            updateVideoTrackViews();
 
             // Since this WebRTCView is no longer rendering anything, make sure
-            // surfaceViewRenderer displays nothing as well.
+            // renderer displays nothing as well.
             synchronized (layoutSyncRoot) {
                 frameHeight = 0;
                 frameRotation = 0;
                 frameWidth = 0;
             }
-            requestSurfaceViewRendererLayout();
+            requestRendererLayout();
         }
     }
 
     /**
-     * Request that {@link #surfaceViewRenderer} be laid out (as soon as
+     * Request that {@link #renderer} be laid out (as soon as
      * possible) because layout-related state either of this instance or of
-     * {@code surfaceViewRenderer} has changed.
+     * {@code renderer} has changed.
      */
     @SuppressLint("WrongCall")
-    private void requestSurfaceViewRendererLayout() {
-        // Google/WebRTC just call requestLayout() on surfaceViewRenderer when
+    private void requestRendererLayout() {
+        // Google/WebRTC just call requestLayout() on renderer when
         // they change the value of its mirror or surfaceType property.
-        surfaceViewRenderer.requestLayout();
+        renderer.getView().requestLayout();
         // The above is not enough though when the video frame's dimensions or
         // rotation change. The following will suffice.
         if (!ViewCompat.isInLayout(this)) {
@@ -378,13 +457,70 @@ public class WebRTCView extends ViewGroup {
     public void setMirror(boolean mirror) {
         if (this.mirror != mirror) {
             this.mirror = mirror;
-            surfaceViewRenderer.setMirror(mirror);
-            // SurfaceViewRenderer takes the value of its mirror property into
+            renderer.setMirror(mirror);
+            // The renderer takes the value of its mirror property into
             // account upon its layout.
-            requestSurfaceViewRendererLayout();
+            requestRendererLayout();
         }
     }
 
+    /**
+     * Sets whether this {@code WebRTCView} stops rendering while it's not
+     * visible: scrolled out, hidden, or in a hidden window (e.g. when the app
+     * is in the background). The video track then stops delivering frames to
+     * it, and starts again once it's visible.
+     *
+     * @param autoPause {@code true} to pause the rendering while this
+     * {@code WebRTCView} is not visible; otherwise, {@code false}.
+     */
+    public void setAutoPause(boolean autoPause) {
+        if (this.autoPause != autoPause) {
+            this.autoPause = autoPause;
+            updatePaused();
+        }
+    }
+
+    /**
+     * Sets the maximum rate at which this {@code WebRTCView} renders frames.
+     * Frames above the rate are dropped before being drawn.
+     *
+     * @param maxFps The maximum number of frames per second, or {@code 0} (or
+     * less) for no maximum.
+     */
+    public void setMaxFps(float maxFps) {
+        if (this.maxFps != maxFps) {
+            this.maxFps = maxFps;
+            renderer.setFpsReduction(maxFps > 0 ? maxFps : Float.POSITIVE_INFINITY);
+        }
+    }
+
+    /**
+     * Sets the maximum resolution at which this {@code WebRTCView} renders
+     * its video. When the view is laid out larger, the video is rendered at
+     * the maximum resolution (keeping the aspect ratio of the view) and scaled
+     * up to the view size.
+     *
+     * @param width The maximum width in pixels, or {@code 0} for no maximum.
+     * @param height The maximum height in pixels, or {@code 0} for no maximum.
+     */
+    public void setMaxRenderResolution(int width, int height) {
+        renderer.setMaxSurfaceSize(width, height);
+
+        if (rendererAttached) {
+            updateVideoTrackViews();
+        }
+    }
+
+    /**
+     * Gets the resolution this {@code WebRTCView} renders its video at, which
+     * is the largest one of the video which would make a difference.
+     *
+     * @return The width and height in pixels.
+     */
+    int[] getRenderResolution() {
+        return renderer.getSurfaceSize();
+    }
+
     /**
      * In the fashion of
      * https://www.w3.org/TR/html5/embedded-content-0.html#dom-video-videowidth
@@ -408,11 +544,11 @@ public class WebRTCView extends ViewGroup {
                 return;
             }
             this.scalingType = scalingType;
-            surfaceViewRenderer.setScalingType(scalingType);
+            renderer.setScalingType(scalingType);
         }
-        // Both this instance ant its SurfaceViewRenderer take the value of
+        // Both this instance ant its renderer take the value of
         // their scalingType properties into account upon their layouts.
-        requestSurfaceViewRendererLayout();
+        requestRendererLayout();
     }
 
     /**
@@ -464,19 +600,21 @@ public class WebRTCView extends ViewGroup {
                 if (videoTrack == null) {
                     // If we are not going to render any stream, clean the
                     // surface.
-                    cleanSurfaceViewRenderer();
+                    cleanRenderer();
                 }
                 removeRendererFromVideoTrack();
             }
 
             this.videoTrack = videoTrack;
+            this.videoTrackId = videoTrack != null ? videoTrack.id() : null;
+            this.videoTrackPeerConnectionId = getVideoTrackPeerConnectionId(videoTrackId);
 
             if (videoTrack != null) {
                 tryAddRendererToVideoTrack();
                 if (oldVideoTrack == null) {
                     // If there was no old track, clean the surface so we start
                     // with black.
-                    cleanSurfaceViewRenderer();
+                    cleanRenderer();
                 }
             }
         }
@@ -491,17 +629,7 @@ public class WebRTCView extends ViewGroup {
      * @param zOrder The z-order to set on this {@code WebRTCView}.
      */
     public void setZOrder(int zOrder) {
-        switch (zOrder) {
-            case 0:
-                surfaceViewRenderer.setZOrderMediaOverlay(false);
-                break;
-            case 1:
-                surfaceViewRenderer.setZOrderMediaOverlay(true);
-                break;
-            case 2:
-                surfaceViewRenderer.setZOrderOnTop(true);
-                break;
-        }
+        renderer.setZOrder(zOrder);
     }
 
     /**
@@ -520,27 +648,112 @@ public class WebRTCView extends ViewGroup {
             }
 
             try {
-                surfaceViewRenderer.init(sharedContext, rendererEvents);
-                surfaceViewRendererInstances++;
+                renderer.init(sharedContext, rendererEvents);
+                rendererInstances++;
+                Log.d(TAG,
+                        "Initialized renderer, instances: " + rendererInstances
+                                + ", sharing a render thread: " + SharedEglThread.getRefCount());
             } catch (Exception e) {
                 Logging.e(
-                        TAG, "Failed to initialize surfaceViewRenderer on instance " + surfaceViewRendererInstances, e);
+                        TAG, "Failed to initialize renderer on instance " + rendererInstances, e);
                 return;
             }
 
-            ThreadUtils.runOnExecutor(() -> {
-                try {
-                    videoTrack.addSink(surfaceViewRenderer);
-                } catch (Throwable tr) {
-                    // XXX If WebRTCModule#mediaStreamTrackRelease has already been
-                    // invoked on videoTrack, then it is no longer safe to call addSink
-                    // on the instance, it will throw IllegalStateException.
-
-                    Log.e(TAG, "Failed to add renderer", tr);
-                }
-            });
+            if (!paused) {
+                addSink();
+            }
 
             rendererAttached = true;
+            updateVideoTrackViews();
+        }
+    }
+
+    private int getVideoTrackPeerConnectionId(String trackId) {
+        WebRTCModule module = ((ReactContext) getContext()).getNativeModule(WebRTCModule.class);
+
+        return module != null && trackId != null ? module.getRemoteTrackPeerConnectionId(trackId) : -1;
+    }
+
+    private void runOnVideoTrackExecutor(Runnable runnable) {
+        if (videoTrackPeerConnectionId == -1) {
+            ThreadUtils.runOnExecutor(runnable);
+        } else {
+            ThreadUtils.runOnExecutor(videoTrackPeerConnectionId, runnable);
+        }
+    }
+
+    private void addSink() {
+        VideoTrack videoTrack = this.videoTrack;
+
+        runOnVideoTrackExecutor(() -> {
+            try {
+                videoTrack.addSink(renderer);
+            } catch (Throwable tr) {
+                // XXX If WebRTCModule#mediaStreamTrackRelease has already been
+                // invoked on videoTrack, then it is no longer safe to call addSink
+                // on the instance, it will throw IllegalStateException.
+
+                Log.e(TAG, "Failed to add renderer", tr);
+            }
+        });
+    }
+
+    private void removeSink() {
+        VideoTrack videoTrack = this.videoTrack;
+
+        runOnVideoTrackExecutor(() -> {
+            try {
+                videoTrack.removeSink(renderer);
+            } catch (Throwable tr) {
+                // XXX If WebRTCModule#mediaStreamTrackRelease has already been
+                // invoked on videoTrack, then it is no longer safe to call removeSink
+                // on the instance, it will throw IllegalStateException.
+            }
+        });
+    }
+
+    /**
+     * Pauses or resumes the rendering of {@link #videoTrack} according to the
+     * visibility of this {@code WebRTCView}, if {@link #autoPause} is set.
+     * While paused, the sink of {@link #renderer} is removed from the track,
+     * so no frames are delivered to it (and drawn).
+     */
+    private void updatePaused() {
+        boolean paused = autoPause && !isVisibleOnScreen();
+
+        if (this.paused == paused) {
+            return;
+        }
+
+        this.paused = paused;
+        pausedInstances += paused ? 1 : -1;
+        Log.d(TAG, (paused ? "Paused" : "Resumed") + " rendering, paused instances: " + pausedInstances);
+
+        if (rendererAttached) {
+            if (paused) {
+                removeSink();
+            } else {
+                addSink();
+            }
+            updateVideoTrackViews();
+        }
+    }
+
+    /**
+     * Determines whether any part of this {@code WebRTCView} is visible: its
+     * window is visible, it and its ancestors are visible, and it's not
+     * entirely clipped (e.g. scrolled out) by them.
+     */
+    private boolean isVisibleOnScreen() {
+        return getWindowVisibility() == VISIBLE && isShown() && getGlobalVisibleRect(visibleRect);
+    }
+
+    private void updateVideoTrackViews() {
+        WebRTCModule module = ((ReactContext) getContext()).getNativeModule(WebRTCModule.class);
+
+        if (module != null) {
+            module.videoTrackViews.update(
+                    this, rendererAttached ? videoTrackId : null, !paused, getRenderResolution());
         }
     }
 }
@@ -0,0 +1,71 @@
+package com.oney.WebRTCModule;
+
+import android.view.View;
+
+import org.webrtc.EglBase;
+import org.webrtc.RendererCommon;
+import org.webrtc.VideoSink;
+
+/**
+ * The {@link View} and {@link VideoSink} which actually renders the video of
+ * a {@link WebRTCView}. The methods mirror those of
+ * {@link org.webrtc.SurfaceViewRenderer}, see
+ * {@link ScaledSurfaceViewRenderer} and {@link TextureViewRenderer} for the
+ * implementations.
+ */
+interface WebRTCViewRenderer extends VideoSink {
+    View getView();
+
+    void init(EglBase.Context sharedContext, RendererCommon.RendererEvents rendererEvents);
+
+    void release();
+
+    void clearImage();
+
+    void setMirror(boolean mirror);
+
+    void setScalingType(RendererCommon.ScalingType scalingType);
+
+    void setFpsReduction(float fps);
+
+    /**
+     * Sets the maximum size of the surface, 0 for no maximum. The aspect ratio
+     * of the view is kept. Must be called on the UI thread.
+     */
+    void setMaxSurfaceSize(int maxSurfaceWidth, int maxSurfaceHeight);
+
+    /**
+     * Gets the size the video is rendered at, in pixels: the size of the view,
+     * scaled down to the maximum surface size if any.
+     */
+    int[] getSurfaceSize();
+
+    /**
+     * Sets the z-order of the renderer, see {@link WebRTCView#setZOrder}.
+     */
+    void setZOrder(int zOrder);
+
+    /**
+     * See {@link View#setBackgroundColor}, which implements it.
+     */
+    void setBackgroundColor(int color);
+
+    /**
+     * Scales the given view size down to the given maximum surface size (0
+     * for no maximum), keeping its aspect ratio. It's never scaled up.
+     *
+     * @return the width and height of the surface.
+     */
+    static int[] getSurfaceSize(int width, int height, int maxSurfaceWidth, int maxSurfaceHeight) {
+        float scale = 1;
+
+        if (maxSurfaceWidth > 0 && width > maxSurfaceWidth) {
+            scale = Math.min(scale, maxSurfaceWidth / (float) width);
+        }
+        if (maxSurfaceHeight > 0 && height > maxSurfaceHeight) {
+            scale = Math.min(scale, maxSurfaceHeight / (float) height);
+        }
+
+        return new int[] {Math.round(width * scale), Math.round(height * scale)};
+    }
+}
@@ -0,0 +1,179 @@
+package com.oney.WebRTCModule.videoEffects;
+
+import android.util.Log;
+
+import org.webrtc.SurfaceTextureHelper;
+import org.webrtc.VideoFrame;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VideoEffectProcessor which applies the effects on a dedicated worker thread, so that slow
+ * processors (e.g. ML models) don't stall the capture thread.
+ *
+ * At most one frame waits to be processed: when a new frame is captured while the worker is busy,
+ * the waiting one is dropped in favor of it. Optionally, when processing a frame takes longer than
+ * a timeout, the frames captured meanwhile are delivered without effects rather than held back, and
+ * the late processed frame is then dropped.
+ *
+ * Captured frames are converted to I420 on the capture thread before being queued, since texture
+ * frames hold the (single) texture of the SurfaceTextureHelper until released, which would stall
+ * the capture anyway. The processors are thus called with I420 frames, on the worker thread.
+ */
+public class AsyncVideoEffectProcessor extends VideoEffectProcessor {
+    private static final String TAG = AsyncVideoEffectProcessor.class.getSimpleName();
+
+    /**
+     * Time, in milliseconds, dispose() waits for the frame being processed, if any.
+     */
+    private static final long DISPOSE_TIMEOUT = 2000;
+
+    /**
+     * Time, in milliseconds, after which frames are passed through, or 0 to never pass them
+     * through.
+     */
+    private final long passthroughTimeout;
+
+    private final ExecutorService worker =
+            Executors.newSingleThreadExecutor(r -> new Thread(r, "VideoEffectProcessor"));
+
+    private final Object lock = new Object();
+
+    /*
+     * Guarded by lock.
+     */
+    private VideoFrame pendingFrame;
+    private boolean processing;
+    private long processingStartTime;
+    private long lastDeliveredTimestampNs = Long.MIN_VALUE;
+    private boolean disposed;
+
+    public AsyncVideoEffectProcessor(
+            List<VideoFrameProcessor> processors, SurfaceTextureHelper textureHelper, long passthroughTimeout) {
+        super(processors, textureHelper);
+        this.passthroughTimeout = passthroughTimeout;
+    }
+
+    @Override
+    public void onFrameCaptured(VideoFrame frame) {
+        VideoFrame.I420Buffer i420Buffer = frame.getBuffer().toI420();
+        if (i420Buffer == null) {
+            Log.w(TAG, "Failed to convert the frame to I420, dropping it");
+            framesDropped.incrementAndGet();
+            return;
+        }
+
+        VideoFrame i420Frame = new VideoFrame(i420Buffer, frame.getRotation(), frame.getTimestampNs());
+
+        synchronized (lock) {
+            if (disposed) {
+                i420Frame.release();
+                return;
+            }
+
+            if (processing && passthroughTimeout > 0
+                    && System.nanoTime() - processingStartTime > TimeUnit.MILLISECONDS.toNanos(passthroughTimeout)) {
+                if (pendingFrame != null) {
+                    pendingFrame.release();
+                    pendingFrame = null;
+                    framesDropped.incrementAndGet();
+                }
+
+                deliver(i420Frame);
+                framesPassedThrough.incrementAndGet();
+                i420Frame.release();
+                return;
+            }
+
+            if (pendingFrame != null) {
+                pendingFrame.release();
+                framesDropped.incrementAndGet();
+            }
+
+            pendingFrame = i420Frame;
+
+            if (!processing) {
+                processing = true;
+                worker.execute(this::processPendingFrames);
+            }
+        }
+    }
+
+    /**
+     * Stops processing frames, and waits for the frame being processed, if any, so that the
+     * processors are not in use anymore once it returns.
+     */
+    @Override
+    public void dispose() {
+        synchronized (lock) {
+            disposed = true;
+
+            if (pendingFrame != null) {
+                pendingFrame.release();
+                pendingFrame = null;
+            }
+        }
+
+        worker.shutdown();
+
+        try {
+            if (!worker.awaitTermination(DISPOSE_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                Log.w(TAG, "Timed out waiting for the frame being processed");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void processPendingFrames() {
+        while (true) {
+            VideoFrame frame;
+
+            synchronized (lock) {
+                frame = pendingFrame;
+                pendingFrame = null;
+
+                if (frame == null) {
+                    processing = false;
+                    return;
+                }
+
+                processingStartTime = System.nanoTime();
+            }
+
+            VideoFrame outputFrame = applyEffects(frame);
+            frame.release();
+
+            synchronized (lock) {
+                if (disposed) {
+                    outputFrame.release();
+                    processing = false;
+                    return;
+                }
+
+                if (!deliver(outputFrame)) {
+                    framesDropped.incrementAndGet();
+                }
+            }
+
+            outputFrame.release();
+        }
+    }
+
+    /**
+     * Delivers the given frame, unless a newer one was delivered already. Must be called with lock
+     * held, so that frames are delivered in order.
+     */
+    private boolean deliver(VideoFrame frame) {
+        if (frame.getTimestampNs() <= lastDeliveredTimestampNs) {
+            return false;
+        }
+
+        lastDeliveredTimestampNs = frame.getTimestampNs();
+        deliverFrame(frame);
+        return true;
+    }
+}
@@ -1,38 +1,225 @@
 package com.oney.WebRTCModule.videoEffects;
 
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Manages VideoFrameProcessorFactoryInterfaces corresponding to name using hashmap, and provides
- * get, add and remove functionality.
+ * Manages VideoFrameProcessorFactoryInterfaces corresponding to name, and provides get, add and
+ * remove functionality. It can be used from any thread.
+ *
+ * Every track gets its own processor for a name, since processors are not required to be
+ * thread-safe and the frames of different tracks are processed concurrently. The processors are
+ * built once per track and name and then reused while the track lives, so switching between
+ * effects doesn't reload their models or shaders every time. A processor is released once it's no
+ * longer needed (its track is disposed, or its factory replaced or removed) and no track is using
+ * it anymore. Processors which are expensive to set up can do so in {@link VideoFrameProcessor#warmUp},
+ * which {@link #warmUpProcessor} calls ahead of the first use.
  */
 public class ProcessorProvider {
-    private static Map<String, VideoFrameProcessorFactoryInterface> methodMap =
-            new HashMap<String, VideoFrameProcessorFactoryInterface>();
+    private static final Map<String, VideoFrameProcessorFactoryInterface> methodMap = new ConcurrentHashMap<>();
 
+    /**
+     * The processors which can still be handed out, mapped by track id and name. Guarded by the
+     * class lock, like the other maps below.
+     */
+    private static final Map<String, Map<String, VideoFrameProcessor>> processors = new HashMap<>();
+
+    /**
+     * Warmed up processors which are not yet used by any track, mapped by name.
+     */
+    private static final Map<String, VideoFrameProcessor> spareProcessors = new HashMap<>();
+
+    /**
+     * All the processors handed out and not released yet.
+     */
+    private static final Map<VideoFrameProcessor, Entry> entries = new IdentityHashMap<>();
+
+    private static final class Entry {
+        /**
+         * The number of effect chains using the processor.
+         */
+        int users;
+
+        /**
+         * Whether the processor can't be handed out anymore, it's released by its last user.
+         */
+        boolean stale;
+    }
+
+    /**
+     * Gets the processor with the given name for the given track, building it if needed. Every
+     * call must be matched by a {@link #releaseProcessor} call, once the track no longer uses the
+     * processor.
+     */
+    public static synchronized VideoFrameProcessor acquireProcessor(String trackId, String name) {
+        if (trackId == null || name == null) {
+            return null;
+        }
+
+        Map<String, VideoFrameProcessor> trackProcessors = processors.get(trackId);
+        VideoFrameProcessor processor = trackProcessors == null ? null : trackProcessors.get(name);
+
+        if (processor == null) {
+            processor = spareProcessors.remove(name);
+            if (processor == null) {
+                VideoFrameProcessorFactoryInterface factory = methodMap.get(name);
+                if (factory == null) {
+                    return null;
+                }
+                processor = factory.build();
+            }
+
+            if (trackProcessors == null) {
+                trackProcessors = new HashMap<>();
+                processors.put(trackId, trackProcessors);
+            }
+            trackProcessors.put(name, processor);
+            entries.put(processor, new Entry());
+        }
+
+        entries.get(processor).users++;
+        return processor;
+    }
+
+    /**
+     * Builds a processor with the given name which isn't cached nor tracked, the caller owns it and
+     * is responsible for releasing it.
+     *
+     * @deprecated processors are now built per track, use {@link #acquireProcessor} and
+     * {@link #releaseProcessor} instead.
+     */
+    @Deprecated
     public static VideoFrameProcessor getProcessor(String name) {
-        if (methodMap.containsKey(name)) {
-            return methodMap.get(name).build();
-        } else {
+        if (name == null) {
+            return null;
+        }
+
+        VideoFrameProcessorFactoryInterface factory = methodMap.get(name);
+        if (factory == null) {
             return null;
         }
+
+        return factory.build();
+    }
+
+    /**
+     * Gives back a processor obtained from {@link #acquireProcessor}. It stays cached for its track
+     * unless it has become stale in the meantime, in which case it's released.
+     */
+    public static synchronized void releaseProcessor(VideoFrameProcessor processor) {
+        Entry entry = entries.get(processor);
+
+        if (entry != null && --entry.users == 0 && entry.stale) {
+            entries.remove(processor);
+            processor.release();
+        }
+    }
+
+    /**
+     * Builds (if needed) and warms up a processor with the given name, so that setting it later on
+     * a track is fast. It's meant to be called off the main thread.
+     * @return whether a processor with the given name exists.
+     */
+    public static boolean warmUpProcessor(String name) {
+        VideoFrameProcessorFactoryInterface factory = name == null ? null : methodMap.get(name);
+        if (factory == null) {
+            return false;
+        }
+
+        synchronized (ProcessorProvider.class) {
+            if (spareProcessors.containsKey(name)) {
+                return true;
+            }
+        }
+
+        // The processor is only published once warmed up, so that no track gets it earlier. Warming
+        // up may be slow, so it's done without the lock.
+        VideoFrameProcessor processor = factory.build();
+        processor.warmUp();
+
+        synchronized (ProcessorProvider.class) {
+            if (methodMap.get(name) == factory && !spareProcessors.containsKey(name)) {
+                spareProcessors.put(name, processor);
+                return true;
+            }
+        }
+
+        // The factory was replaced or removed meanwhile, or another spare was published first.
+        processor.release();
+        return true;
+    }
+
+    /**
+     * Releases the processors of the given track, once it's disposed. Those still in use are
+     * released when they are given back.
+     */
+    public static synchronized void releaseProcessors(String trackId) {
+        Map<String, VideoFrameProcessor> trackProcessors = processors.remove(trackId);
+
+        if (trackProcessors != null) {
+            for (VideoFrameProcessor processor : trackProcessors.values()) {
+                retire(processor);
+            }
+        }
     }
 
     public static void addProcessor(
             String name, VideoFrameProcessorFactoryInterface videoFrameProcessorFactoryInterface) {
         if (name != null && videoFrameProcessorFactoryInterface != null) {
-            methodMap.put(name, videoFrameProcessorFactoryInterface);
+            if (methodMap.put(name, videoFrameProcessorFactoryInterface) != null) {
+                // The processors built by the previous factory are stale now.
+                releaseProcessorsNamed(name);
+            }
         } else {
             throw new NullPointerException("Name or VideoFrameProcessorFactry can not be null");
         }
     }
 
     public static void removeProcessor(String name) {
-        if (name != null && methodMap.containsKey(name)) {
-            methodMap.remove(name);
+        if (name != null && methodMap.remove(name) != null) {
+            releaseProcessorsNamed(name);
         } else {
             throw new RuntimeException("VideoFrameProcessorFactry with " + name + " does not exist");
         }
     }
+
+    /**
+     * Releases the processors with the given name of all the tracks, and the spare one.
+     */
+    private static synchronized void releaseProcessorsNamed(String name) {
+        for (Iterator<Map<String, VideoFrameProcessor>> i = processors.values().iterator(); i.hasNext();) {
+            Map<String, VideoFrameProcessor> trackProcessors = i.next();
+            VideoFrameProcessor processor = trackProcessors.remove(name);
+
+            if (processor != null) {
+                retire(processor);
+            }
+            if (trackProcessors.isEmpty()) {
+                i.remove();
+            }
+        }
+
+        VideoFrameProcessor spare = spareProcessors.remove(name);
+        if (spare != null) {
+            spare.release();
+        }
+    }
+
+    /**
+     * Marks a processor which can't be handed out anymore as stale, releasing it right away if no
+     * track is using it.
+     */
+    private static void retire(VideoFrameProcessor processor) {
+        Entry entry = entries.get(processor);
+
+        if (entry.users == 0) {
+            entries.remove(processor);
+            processor.release();
+        } else {
+            entry.stale = true;
+        }
+    }
 }
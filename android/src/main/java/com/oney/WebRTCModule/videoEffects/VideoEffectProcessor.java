@@ -1,22 +1,60 @@
 package com.oney.WebRTCModule.videoEffects;
 
+import android.util.Log;
+
 import org.webrtc.SurfaceTextureHelper;
 import org.webrtc.VideoFrame;
 import org.webrtc.VideoProcessor;
 import org.webrtc.VideoSink;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
 /**
  * Lightweight abstraction for an object that can receive video frames, process and add effects in
  * them, and pass them on to another object.
+ *
+ * The effects are applied by a chain of VideoFrameProcessors, in order, each one getting the output
+ * of the previous one. Frames are handed from one to the next as they are, so texture frames stay on
+ * the GPU (in the EGL context of the SurfaceTextureHelper, which is shared with the root one from
+ * EglUtils) unless a processor itself converts them.
  */
 public class VideoEffectProcessor implements VideoProcessor {
-    private VideoSink mSink;
+    private static final String TAG = VideoEffectProcessor.class.getSimpleName();
+
+    /**
+     * Number of frames after which the average processing time of each stage is logged.
+     */
+    private static final int STATS_LOG_INTERVAL = 300;
+
+    private volatile VideoSink mSink;
     final private SurfaceTextureHelper textureHelper;
-    final private VideoFrameProcessor videoFrameProcessor;
+    final private List<VideoFrameProcessor> videoFrameProcessors;
+
+    /**
+     * Total processing time of each stage, in nanoseconds, since the stats were last logged. Only
+     * accessed from the thread processing the frames.
+     */
+    final private long[] stageTimes;
+    private int frameCount;
+
+    protected final AtomicLong framesProcessed = new AtomicLong();
+    protected final AtomicLong framesDropped = new AtomicLong();
+    protected final AtomicLong framesPassedThrough = new AtomicLong();
+    private final AtomicLong totalProcessingTime = new AtomicLong();
+    private final AtomicLong maxProcessingTime = new AtomicLong();
 
     public VideoEffectProcessor(VideoFrameProcessor processor, SurfaceTextureHelper textureHelper) {
+        this(Collections.singletonList(processor), textureHelper);
+    }
+
+    public VideoEffectProcessor(List<VideoFrameProcessor> processors, SurfaceTextureHelper textureHelper) {
         this.textureHelper = textureHelper;
-        this.videoFrameProcessor = processor;
+        this.videoFrameProcessors = Collections.unmodifiableList(new ArrayList<>(processors));
+        this.stageTimes = new long[processors.size()];
     }
 
     @Override
@@ -32,22 +70,114 @@ public class VideoEffectProcessor implements VideoProcessor {
 
     /**
      * Called just after the frame is captured.
-     * Will process the VideoFrame with the help of VideoFrameProcessor and send the processed
-     * VideoFrame back to webrtc using onFrame method in VideoSink.
+     * Will process the VideoFrame with each VideoFrameProcessor in turn and send the processed
+     * VideoFrame back to webrtc using onFrame method in VideoSink. A processor returning null
+     * leaves the frame as is.
      * @param frame raw VideoFrame received from webrtc.
      */
     @Override
     public void onFrameCaptured(VideoFrame frame) {
+        VideoFrame outputFrame = applyEffects(frame);
+        deliverFrame(outputFrame);
+        outputFrame.release();
+    }
+
+    /**
+     * Releases the resources held by this processor, once it's no longer set on the VideoSource.
+     */
+    public void dispose() {}
+
+    /**
+     * Gets the chain of processors applied by this processor, in order.
+     */
+    public List<VideoFrameProcessor> getVideoFrameProcessors() {
+        return videoFrameProcessors;
+    }
+
+    public long getFramesProcessed() {
+        return framesProcessed.get();
+    }
+
+    /**
+     * Gets the number of frames which were not delivered because newer ones were available.
+     */
+    public long getFramesDropped() {
+        return framesDropped.get();
+    }
+
+    /**
+     * Gets the number of frames which were delivered without effects because processing was taking
+     * too long.
+     */
+    public long getFramesPassedThrough() {
+        return framesPassedThrough.get();
+    }
+
+    public long getTotalProcessingTimeNs() {
+        return totalProcessingTime.get();
+    }
+
+    public long getMaxProcessingTimeNs() {
+        return maxProcessingTime.get();
+    }
+
+    /**
+     * Applies the chain of processors to the given frame.
+     * @return the processed frame, which the caller is responsible for releasing.
+     */
+    protected VideoFrame applyEffects(VideoFrame frame) {
+        long start = System.nanoTime();
+
         frame.retain();
-        VideoFrame outputFrame = videoFrameProcessor.process(frame, textureHelper);
+        VideoFrame outputFrame = frame;
+
+        for (int i = 0; i < videoFrameProcessors.size(); i++) {
+            long stageStart = System.nanoTime();
+            VideoFrame processedFrame = videoFrameProcessors.get(i).process(outputFrame, textureHelper);
+            stageTimes[i] += System.nanoTime() - stageStart;
 
-        if (outputFrame == null) {
-            mSink.onFrame(frame);
-            frame.release();
-            return;
+            if (processedFrame != null) {
+                outputFrame.release();
+                outputFrame = processedFrame;
+            }
         }
-        mSink.onFrame(outputFrame);
-        outputFrame.release();
-        frame.release();
+
+        long processingTime = System.nanoTime() - start;
+        framesProcessed.incrementAndGet();
+        totalProcessingTime.addAndGet(processingTime);
+        long maxTime;
+        while (processingTime > (maxTime = maxProcessingTime.get())
+                && !maxProcessingTime.compareAndSet(maxTime, processingTime)) {
+            // Retry.
+        }
+
+        if (++frameCount == STATS_LOG_INTERVAL) {
+            logStats();
+        }
+
+        return outputFrame;
+    }
+
+    protected void deliverFrame(VideoFrame frame) {
+        VideoSink sink = mSink;
+        if (sink != null) {
+            sink.onFrame(frame);
+        }
+    }
+
+    private void logStats() {
+        StringBuilder builder = new StringBuilder("Average processing time per frame:");
+
+        for (int i = 0; i < stageTimes.length; i++) {
+            builder.append(' ')
+                    .append(videoFrameProcessors.get(i).getClass().getSimpleName())
+                    .append(' ')
+                    .append(String.format(Locale.US, "%.2f", stageTimes[i] / 1e6 / frameCount))
+                    .append("ms");
+            stageTimes[i] = 0;
+        }
+
+        frameCount = 0;
+        Log.d(TAG, builder.toString());
     }
 }
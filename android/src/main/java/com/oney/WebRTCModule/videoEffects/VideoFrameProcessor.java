@@ -16,4 +16,15 @@ public interface VideoFrameProcessor {
      * @return processed videoframe which will rendered
      */
     public VideoFrame process(VideoFrame frame, SurfaceTextureHelper textureHelper);
+
+    /**
+     * Loads whatever the processor needs (models, shaders, etc.) ahead of the first frame. It may
+     * be called more than once, and from any thread.
+     */
+    default void warmUp() {}
+
+    /**
+     * Releases the resources of the processor, it won't be used anymore.
+     */
+    default void release() {}
 }
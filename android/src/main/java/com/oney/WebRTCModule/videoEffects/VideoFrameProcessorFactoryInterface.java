@@ -6,7 +6,8 @@ package com.oney.WebRTCModule.videoEffects;
 public interface VideoFrameProcessorFactoryInterface {
     /**
      * Dynamically allocates a VideoFrameProcessor instance and returns a pointer to it.
-     * The caller takes ownership of the object.
+     * The caller takes ownership of the object. ProcessorProvider calls it once per name and
+     * reuses the instance.
      */
     public VideoFrameProcessor build();
 }
@@ -1,5 +1,9 @@
 package com.oney.WebRTCModule.webrtcutils;
 
+import android.media.MediaCodecInfo;
+import android.media.MediaCodecList;
+import android.util.Log;
+
 import androidx.annotation.Nullable;
 
 import org.webrtc.EglBase;
@@ -10,43 +14,243 @@ import org.webrtc.VideoDecoderFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
 
 /**
  * This is a custom video decoder factory for WebRTC which behaves similarly
  * to the default one in iOS. It supports the following codecs:
  *
- * - In hardware: H.264 (high, baseline)
+ * - In hardware: H.264 (high, baseline), and optionally VP8 and VP9
  * - In software: VP8, VP9, AV1
+ *
+ * Devices only support so many hardware decoders at once, and creating more
+ * fails, so the number of live hardware decoders of each codec is capped
+ * (by default to what the device reports): streams past the cap are decoded
+ * in software instead, if there's a software decoder for the codec.
  */
 public class H264AndSoftwareVideoDecoderFactory implements VideoDecoderFactory {
+    private static final String TAG = H264AndSoftwareVideoDecoderFactory.class.getSimpleName();
+
     private final VideoDecoderFactory hardwareVideoDecoderFactory;
     private final VideoDecoderFactory softwareVideoDecoderFactory;
 
+    /**
+     * The maximum number of live hardware decoders of each codec, or 0 for the
+     * limit reported by the device.
+     */
+    private final int maxHardwareDecoders;
+
+    /**
+     * The codecs, besides H.264, to decode in hardware when the device can.
+     */
+    private final Set<String> hardwareCodecs = new HashSet<>();
+
+    private final SupportedCodecsCache supportedCodecs = new SupportedCodecsCache(this::computeSupportedCodecs);
+
+    /**
+     * The codecs the hardware and the software decoders support, resolved
+     * along with {@link #supportedCodecs}.
+     */
+    @Nullable
+    private Set<String> supportedHardwareCodecs;
+    @Nullable
+    private Set<String> supportedSoftwareCodecs;
+
+    /*
+     * Guarded by this.
+     */
+    private final Map<String, Integer> hardwareDecoderLimits = new HashMap<>();
+    private final Map<String, Integer> liveHardwareDecoders = new HashMap<>();
+    private int decoderCount;
+
+    /**
+     * Keeps {@link #liveHardwareDecoders} up to date as decoders are reset.
+     */
+    private final TrackedVideoDecoder.SlotListener slotListener = new TrackedVideoDecoder.SlotListener() {
+        @Override
+        public void onDecoderInitialized(TrackedVideoDecoder decoder) {
+            // The decoder is a hardware one already, so it takes the slot even
+            // past the limit.
+            synchronized (H264AndSoftwareVideoDecoderFactory.this) {
+                String codecName = decoder.getCodecName();
+
+                liveHardwareDecoders.put(codecName, getLiveHardwareDecoders(codecName) + 1);
+            }
+        }
+
+        @Override
+        public void onDecoderReleased(TrackedVideoDecoder decoder) {
+            synchronized (H264AndSoftwareVideoDecoderFactory.this) {
+                String codecName = decoder.getCodecName();
+
+                liveHardwareDecoders.put(codecName, Math.max(0, getLiveHardwareDecoders(codecName) - 1));
+            }
+        }
+    };
+
     public H264AndSoftwareVideoDecoderFactory(@Nullable EglBase.Context eglContext) {
+        this(eglContext, 0, false, false);
+    }
+
+    /**
+     * @param maxHardwareDecoders The maximum number of live hardware decoders
+     * of each codec, or 0 for the limit reported by the device.
+     * @param enableHardwareVp8 Whether to decode VP8 in hardware when the
+     * device can.
+     * @param enableHardwareVp9 Whether to decode VP9 in hardware when the
+     * device can.
+     */
+    public H264AndSoftwareVideoDecoderFactory(@Nullable EglBase.Context eglContext,
+            int maxHardwareDecoders,
+            boolean enableHardwareVp8,
+            boolean enableHardwareVp9) {
         this.hardwareVideoDecoderFactory = new HardwareVideoDecoderFactory(eglContext);
         this.softwareVideoDecoderFactory = new SoftwareVideoDecoderFactoryProxy();
+        this.maxHardwareDecoders = maxHardwareDecoders;
+
+        hardwareCodecs.add("H264");
+        if (enableHardwareVp8) {
+            hardwareCodecs.add("VP8");
+        }
+        if (enableHardwareVp9) {
+            hardwareCodecs.add("VP9");
+        }
     }
 
     @Nullable
     @Override
     public VideoDecoder createDecoder(VideoCodecInfo codecInfo) {
-        if (codecInfo.name.equalsIgnoreCase("H264")) {
-            return this.hardwareVideoDecoderFactory.createDecoder(codecInfo);
+        String codecName = codecInfo.name.toUpperCase(Locale.ROOT);
+        int decoderId;
+        String reason = null;
+
+        synchronized (this) {
+            decoderId = ++decoderCount;
+
+            if (hardwareCodecs.contains(codecName) && getSupportedHardwareCodecs().contains(codecName)) {
+                int liveDecoders = getLiveHardwareDecoders(codecName);
+                int limit = getHardwareDecoderLimit(codecName);
+
+                // Without a software decoder, go over the limit rather than
+                // fail right away, the device may cope.
+                if (liveDecoders < limit || !supportedSoftwareCodecs.contains(codecName)) {
+                    VideoDecoder decoder = this.hardwareVideoDecoderFactory.createDecoder(codecInfo);
+
+                    if (decoder != null) {
+                        liveHardwareDecoders.put(codecName, liveDecoders + 1);
+                        Log.d(TAG,
+                                "Decoder #" + decoderId + " (" + codecName + "): hardware, " + (liveDecoders + 1)
+                                        + " of " + limit + " in use");
+
+                        return new TrackedVideoDecoder(decoder, codecName, decoderId, slotListener);
+                    }
+
+                    reason = "no hardware decoder";
+                } else {
+                    reason = "hardware decoders limit of " + limit + " reached";
+                }
+            }
         }
 
+        Log.d(TAG, "Decoder #" + decoderId + " (" + codecName + "): software" + (reason != null ? ", " + reason : ""));
+
         return this.softwareVideoDecoderFactory.createDecoder(codecInfo);
     }
 
     @Override
-    public VideoCodecInfo[] getSupportedCodecs() {
+    public synchronized VideoCodecInfo[] getSupportedCodecs() {
+        return supportedCodecs.get();
+    }
+
+    private int getLiveHardwareDecoders(String codecName) {
+        Integer liveDecoders = liveHardwareDecoders.get(codecName);
+
+        return liveDecoders == null ? 0 : liveDecoders;
+    }
+
+    private Set<String> getSupportedHardwareCodecs() {
+        if (supportedHardwareCodecs == null) {
+            supportedCodecs.get();
+        }
+
+        return supportedHardwareCodecs;
+    }
+
+    private int getHardwareDecoderLimit(String codecName) {
+        Integer limit = hardwareDecoderLimits.get(codecName);
+
+        if (limit == null) {
+            limit = getMaxSupportedInstances(codecName);
+            if (maxHardwareDecoders > 0) {
+                limit = Math.min(limit, maxHardwareDecoders);
+            }
+            hardwareDecoderLimits.put(codecName, limit);
+        }
+
+        return limit;
+    }
+
+    /**
+     * Gets the number of hardware decoders of the given codec the device
+     * supports at once, or {@link Integer#MAX_VALUE} if it doesn't say.
+     */
+    private static int getMaxSupportedInstances(String codecName) {
+        String mimeType = getMimeType(codecName);
+        int maxInstances = 0;
+
+        if (mimeType != null) {
+            try {
+                for (MediaCodecInfo info : new MediaCodecList(MediaCodecList.REGULAR_CODECS).getCodecInfos()) {
+                    if (info.isEncoder() || isSoftwareCodec(info.getName())
+                            || !Arrays.asList(info.getSupportedTypes()).contains(mimeType)) {
+                        continue;
+                    }
+
+                    maxInstances =
+                            Math.max(maxInstances, info.getCapabilitiesForType(mimeType).getMaxSupportedInstances());
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Failed to get the hardware decoders of " + codecName, e);
+            }
+        }
+
+        return maxInstances > 0 ? maxInstances : Integer.MAX_VALUE;
+    }
+
+    @Nullable
+    private static String getMimeType(String codecName) {
+        switch (codecName) {
+            case "H264":
+                return "video/avc";
+            case "VP8":
+                return "video/x-vnd.on2.vp8";
+            case "VP9":
+                return "video/x-vnd.on2.vp9";
+            default:
+                return null;
+        }
+    }
+
+    private static boolean isSoftwareCodec(String name) {
+        return name.startsWith("OMX.google.") || name.startsWith("c2.android.") || name.startsWith("c2.google.");
+    }
+
+    private VideoCodecInfo[] computeSupportedCodecs() {
         List<VideoCodecInfo> codecs = new ArrayList<>();
+        Set<String> hardwareCodecNames = new HashSet<>();
 
         VideoCodecInfo h264Baseline = null;
         VideoCodecInfo h264High = null;
 
         VideoCodecInfo[] hwCodecs = this.hardwareVideoDecoderFactory.getSupportedCodecs();
         for (VideoCodecInfo hwCodec : hwCodecs) {
+            hardwareCodecNames.add(hwCodec.name.toUpperCase(Locale.ROOT));
+
             if (hwCodec.name.equalsIgnoreCase("H264")) {
                 String profileLevel = hwCodec.params.get(VideoCodecInfo.H264_FMTP_PROFILE_LEVEL_ID);
                 if (profileLevel == null) {
@@ -66,7 +270,15 @@ public class H264AndSoftwareVideoDecoderFactory implements VideoDecoderFactory {
         if (h264Baseline != null) {
             codecs.add(h264Baseline);
         }
-        codecs.addAll(Arrays.asList(this.softwareVideoDecoderFactory.getSupportedCodecs()));
+
+        Set<String> softwareCodecNames = new HashSet<>();
+        for (VideoCodecInfo swCodec : this.softwareVideoDecoderFactory.getSupportedCodecs()) {
+            softwareCodecNames.add(swCodec.name.toUpperCase(Locale.ROOT));
+            codecs.add(swCodec);
+        }
+
+        supportedHardwareCodecs = hardwareCodecNames;
+        supportedSoftwareCodecs = softwareCodecNames;
 
         return codecs.toArray(new VideoCodecInfo[codecs.size()]);
     }
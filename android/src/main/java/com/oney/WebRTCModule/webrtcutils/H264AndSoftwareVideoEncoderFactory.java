@@ -1,5 +1,7 @@
 package com.oney.WebRTCModule.webrtcutils;
 
+import android.util.Log;
+
 import androidx.annotation.Nullable;
 
 import org.webrtc.EglBase;
@@ -10,7 +12,9 @@ import org.webrtc.VideoEncoderFactory;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 
 /**
  * This is a custom video encoder factory for WebRTC which behaves similarly
@@ -18,14 +22,32 @@ import java.util.List;
  *
  * - In hardware: H.264 (high, baseline)
  * - In software: VP8, VP9, AV1
+ *
+ * When the hardware encoders were measured by a {@link VideoEncoderProbe},
+ * those which failed or are too slow are left out, and the others are
+ * ordered by the measured frame rate. The probe runs in the background, the
+ * results apply if it finished before the codecs are first queried (the next
+ * time the app starts otherwise).
  */
 public class H264AndSoftwareVideoEncoderFactory implements VideoEncoderFactory {
+    private static final String TAG = H264AndSoftwareVideoEncoderFactory.class.getSimpleName();
+
     private final VideoEncoderFactory hardwareVideoEncoderFactory;
     private final VideoEncoderFactory softwareVideoEncoderFactory;
 
+    @Nullable
+    private final VideoEncoderProbe probe;
+
+    private final SupportedCodecsCache supportedCodecs = new SupportedCodecsCache(this::computeSupportedCodecs);
+
     public H264AndSoftwareVideoEncoderFactory(@Nullable EglBase.Context eglContext) {
+        this(eglContext, null);
+    }
+
+    public H264AndSoftwareVideoEncoderFactory(@Nullable EglBase.Context eglContext, @Nullable VideoEncoderProbe probe) {
         this.hardwareVideoEncoderFactory = new HardwareVideoEncoderFactory(eglContext, false, true);
         this.softwareVideoEncoderFactory = new SoftwareVideoEncoderFactoryProxy();
+        this.probe = probe;
     }
 
     @Nullable
@@ -39,7 +61,11 @@ public class H264AndSoftwareVideoEncoderFactory implements VideoEncoderFactory {
     }
 
     @Override
-    public VideoCodecInfo[] getSupportedCodecs() {
+    public synchronized VideoCodecInfo[] getSupportedCodecs() {
+        return supportedCodecs.get();
+    }
+
+    private VideoCodecInfo[] computeSupportedCodecs() {
         List<VideoCodecInfo> codecs = new ArrayList<>();
 
         VideoCodecInfo h264Baseline = null;
@@ -60,14 +86,55 @@ public class H264AndSoftwareVideoEncoderFactory implements VideoEncoderFactory {
             }
         }
 
+        List<VideoCodecInfo> hwCandidates = new ArrayList<>();
         if (h264High != null) {
-            codecs.add(h264High);
+            hwCandidates.add(h264High);
         }
         if (h264Baseline != null) {
-            codecs.add(h264Baseline);
+            hwCandidates.add(h264Baseline);
+        }
+
+        Map<String, VideoEncoderProbe.Result> probeResults = probe != null ? probe.getResults() : null;
+        if (probeResults != null) {
+            hwCandidates = selectProbedCodecs(hwCandidates, probeResults);
         }
+
+        codecs.addAll(hwCandidates);
         codecs.addAll(Arrays.asList(this.softwareVideoEncoderFactory.getSupportedCodecs()));
 
         return codecs.toArray(new VideoCodecInfo[codecs.size()]);
     }
+
+    /**
+     * Leaves out the codecs whose encoder failed or is too slow according to
+     * the probe, and orders the others from the fastest to the slowest.
+     */
+    private static List<VideoCodecInfo> selectProbedCodecs(
+            List<VideoCodecInfo> codecs, Map<String, VideoEncoderProbe.Result> probeResults) {
+        List<VideoCodecInfo> selectedCodecs = new ArrayList<>();
+
+        for (VideoCodecInfo codec : codecs) {
+            VideoEncoderProbe.Result result = probeResults.get(VideoEncoderProbe.getKey(codec));
+
+            // Codecs the probe doesn't know about are kept as they are.
+            if (result == null || result.isUsable()) {
+                selectedCodecs.add(codec);
+            } else {
+                Log.d(TAG, "Not using the hardware encoder of " + VideoEncoderProbe.getKey(codec) + ": " + result);
+            }
+        }
+
+        Collections.sort(selectedCodecs, (a, b) -> {
+            VideoEncoderProbe.Result resultA = probeResults.get(VideoEncoderProbe.getKey(a));
+            VideoEncoderProbe.Result resultB = probeResults.get(VideoEncoderProbe.getKey(b));
+
+            if (resultA == null || resultB == null) {
+                return 0;
+            }
+
+            return Double.compare(resultB.framesPerSecond, resultA.framesPerSecond);
+        });
+
+        return selectedCodecs;
+    }
 }
@@ -0,0 +1,151 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.EglBase;
+import org.webrtc.HardwareVideoEncoderFactory;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFactory;
+import org.webrtc.VideoEncoderFallback;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Video encoder factory which encodes each codec in hardware or in software according to a
+ * {@link VideoEncoderPolicy}. Hardware encoders are only offered if the policy allows them and,
+ * when the encoders were measured by a {@link VideoEncoderProbe}, if they worked fast enough.
+ * Hardware encoders are wrapped in a {@link VideoEncoderFallback}, so that WebRTC switches to the
+ * software encoder if the hardware one fails.
+ */
+public class PolicyVideoEncoderFactory implements VideoEncoderFactory {
+    private static final String TAG = PolicyVideoEncoderFactory.class.getSimpleName();
+
+    private final VideoEncoderPolicy policy;
+    private final VideoEncoderFactory hardwareVideoEncoderFactory;
+    private final VideoEncoderFactory softwareVideoEncoderFactory;
+
+    @Nullable
+    private final VideoEncoderProbe probe;
+
+    private final SupportedCodecsCache supportedCodecs = new SupportedCodecsCache(this::computeSupportedCodecs);
+
+    /**
+     * The codecs offered in hardware and those supported in software, resolved along with
+     * {@link #supportedCodecs}.
+     */
+    @Nullable
+    private List<VideoCodecInfo> hardwareCodecs;
+    @Nullable
+    private List<VideoCodecInfo> softwareCodecs;
+
+    public PolicyVideoEncoderFactory(
+            @Nullable EglBase.Context eglContext, VideoEncoderPolicy policy, @Nullable VideoEncoderProbe probe) {
+        this.policy = policy;
+        this.hardwareVideoEncoderFactory =
+                new HardwareVideoEncoderFactory(eglContext, false, true, policy::isEncoderAllowed);
+        this.softwareVideoEncoderFactory = new SoftwareVideoEncoderFactoryProxy();
+        this.probe = probe;
+    }
+
+    @Nullable
+    @Override
+    public VideoEncoder createEncoder(VideoCodecInfo codecInfo) {
+        boolean hardware;
+        boolean software;
+
+        synchronized (this) {
+            getSupportedCodecs();
+            hardware = hardwareCodecs.contains(codecInfo);
+            software = softwareCodecs.contains(codecInfo);
+        }
+
+        if (hardware) {
+            VideoEncoder hardwareEncoder = this.hardwareVideoEncoderFactory.createEncoder(codecInfo);
+
+            if (hardwareEncoder != null) {
+                if (software && policy.fallbackToSoftware) {
+                    VideoEncoder softwareEncoder = this.softwareVideoEncoderFactory.createEncoder(codecInfo);
+
+                    if (softwareEncoder != null) {
+                        Log.d(TAG, "Encoder for " + codecInfo.name + ": hardware, with software fallback");
+                        return new VideoEncoderFallback(softwareEncoder, hardwareEncoder);
+                    }
+                }
+
+                Log.d(TAG, "Encoder for " + codecInfo.name + ": hardware");
+                return hardwareEncoder;
+            }
+        }
+
+        Log.d(TAG, "Encoder for " + codecInfo.name + ": software");
+        return this.softwareVideoEncoderFactory.createEncoder(codecInfo);
+    }
+
+    @Override
+    public synchronized VideoCodecInfo[] getSupportedCodecs() {
+        return supportedCodecs.get();
+    }
+
+    private VideoCodecInfo[] computeSupportedCodecs() {
+        Map<String, VideoEncoderProbe.Result> probeResults = probe != null ? probe.getResults() : null;
+
+        hardwareCodecs = new ArrayList<>();
+        for (VideoCodecInfo hwCodec : this.hardwareVideoEncoderFactory.getSupportedCodecs()) {
+            if (!policy.prefersHardware(hwCodec.name)) {
+                continue;
+            }
+
+            VideoEncoderProbe.Result result =
+                    probeResults != null ? probeResults.get(VideoEncoderProbe.getKey(hwCodec)) : null;
+            if (result != null && !result.isUsable()) {
+                Log.d(TAG, "Not using the hardware encoder of " + VideoEncoderProbe.getKey(hwCodec) + ": " + result);
+                continue;
+            }
+
+            hardwareCodecs.add(hwCodec);
+        }
+
+        softwareCodecs = new ArrayList<>();
+        for (VideoCodecInfo swCodec : this.softwareVideoEncoderFactory.getSupportedCodecs()) {
+            softwareCodecs.add(swCodec);
+        }
+
+        // H.264 first, as with H264AndSoftwareVideoEncoderFactory, then the
+        // codecs in the order of the software encoders. The hardware variants
+        // of a codec come before the software ones.
+        Set<String> codecNames = new LinkedHashSet<>();
+        codecNames.add("H264");
+        for (VideoCodecInfo codec : softwareCodecs) {
+            codecNames.add(codec.name.toUpperCase(Locale.ROOT));
+        }
+        for (VideoCodecInfo codec : hardwareCodecs) {
+            codecNames.add(codec.name.toUpperCase(Locale.ROOT));
+        }
+
+        List<VideoCodecInfo> codecs = new ArrayList<>();
+        for (String codecName : codecNames) {
+            addCodecs(codecs, hardwareCodecs, codecName);
+            addCodecs(codecs, softwareCodecs, codecName);
+        }
+
+        Log.d(TAG, "Hardware codecs: " + hardwareCodecs.size() + ", software codecs: " + softwareCodecs.size());
+
+        return codecs.toArray(new VideoCodecInfo[codecs.size()]);
+    }
+
+    private static void addCodecs(List<VideoCodecInfo> codecs, List<VideoCodecInfo> candidates, String codecName) {
+        for (VideoCodecInfo codec : candidates) {
+            if (codec.name.equalsIgnoreCase(codecName) && !codecs.contains(codec)) {
+                codecs.add(codec);
+            }
+        }
+    }
+}
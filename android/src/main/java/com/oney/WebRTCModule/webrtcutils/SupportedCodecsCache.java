@@ -0,0 +1,34 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import androidx.annotation.Nullable;
+
+import org.webrtc.VideoCodecInfo;
+
+import java.util.function.Supplier;
+
+/**
+ * Computes the codecs supported by a video encoder or decoder factory on first use and then hands
+ * out copies of them. Querying the hardware codecs goes through MediaCodecList, which is slow, and
+ * the result doesn't change, so it's done only once.
+ *
+ * It isn't thread-safe, the factory calls it with its own lock held, which also guards whatever
+ * state the computation resolves along with the codecs.
+ */
+final class SupportedCodecsCache {
+    private final Supplier<VideoCodecInfo[]> computation;
+
+    @Nullable
+    private VideoCodecInfo[] codecs;
+
+    SupportedCodecsCache(Supplier<VideoCodecInfo[]> computation) {
+        this.computation = computation;
+    }
+
+    VideoCodecInfo[] get() {
+        if (codecs == null) {
+            codecs = computation.get();
+        }
+
+        return codecs.clone();
+    }
+}
@@ -0,0 +1,143 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import android.util.Log;
+
+import org.webrtc.EncodedImage;
+import org.webrtc.VideoCodecStatus;
+import org.webrtc.VideoDecoder;
+import org.webrtc.VideoFrame;
+
+import java.util.Locale;
+
+/**
+ * Hardware (MediaCodec) decoder of a stream, which reports to the factory when it's initialized and
+ * released, so that the factory knows how many are in use, and logs how long decoding takes.
+ *
+ * WebRTC may reset a decoder by releasing it and initializing it again, so it holds one of the
+ * factory's slots from its creation (it's about to be initialized) to its release, and then again
+ * from every following initialization to the next release.
+ *
+ * Only decoders implemented in Java can be wrapped: the software ones are native decoders which
+ * WebRTC calls directly.
+ */
+class TrackedVideoDecoder implements VideoDecoder {
+    private static final String TAG = TrackedVideoDecoder.class.getSimpleName();
+
+    /**
+     * Number of frames after which the average decode time is logged.
+     */
+    private static final int STATS_LOG_INTERVAL = 300;
+
+    interface SlotListener {
+        void onDecoderInitialized(TrackedVideoDecoder decoder);
+
+        void onDecoderReleased(TrackedVideoDecoder decoder);
+    }
+
+    private final VideoDecoder decoder;
+    private final String codecName;
+    private final int decoderId;
+    private final SlotListener slotListener;
+
+    /**
+     * Whether this decoder holds a slot of the factory. Guarded by this.
+     */
+    private boolean holdsSlot = true;
+
+    /*
+     * Accessed on the thread delivering the decoded frames.
+     */
+    private int frameCount;
+    private long totalDecodeTimeMs;
+    private int maxDecodeTimeMs;
+
+    TrackedVideoDecoder(VideoDecoder decoder, String codecName, int decoderId, SlotListener slotListener) {
+        this.decoder = decoder;
+        this.codecName = codecName;
+        this.decoderId = decoderId;
+        this.slotListener = slotListener;
+    }
+
+    String getCodecName() {
+        return codecName;
+    }
+
+    @Override
+    public VideoCodecStatus initDecode(Settings settings, Callback decodeCallback) {
+        synchronized (this) {
+            if (!holdsSlot) {
+                holdsSlot = true;
+                slotListener.onDecoderInitialized(this);
+            }
+        }
+
+        VideoCodecStatus status = decoder.initDecode(settings, (frame, decodeTimeMs, qp) -> {
+            if (decodeTimeMs != null) {
+                onFrameDecoded(decodeTimeMs);
+            }
+            decodeCallback.onDecodedFrame(frame, decodeTimeMs, qp);
+        });
+
+        Log.d(TAG,
+                "Decoder #" + decoderId + " (" + codecName + ", hardware " + decoder.getImplementationName()
+                        + ") initialized at " + settings.width + "x" + settings.height + ": " + status);
+
+        return status;
+    }
+
+    @Override
+    public VideoCodecStatus release() {
+        VideoCodecStatus status = decoder.release();
+
+        synchronized (this) {
+            if (!holdsSlot) {
+                return status;
+            }
+            holdsSlot = false;
+        }
+
+        logStats("released");
+        frameCount = 0;
+        totalDecodeTimeMs = 0;
+        maxDecodeTimeMs = 0;
+        slotListener.onDecoderReleased(this);
+
+        return status;
+    }
+
+    @Override
+    public VideoCodecStatus decode(EncodedImage frame, DecodeInfo info) {
+        return decoder.decode(frame, info);
+    }
+
+    @Override
+    public String getImplementationName() {
+        return decoder.getImplementationName();
+    }
+
+    private void onFrameDecoded(int decodeTimeMs) {
+        frameCount++;
+        totalDecodeTimeMs += decodeTimeMs;
+        maxDecodeTimeMs = Math.max(maxDecodeTimeMs, decodeTimeMs);
+
+        if (frameCount % STATS_LOG_INTERVAL == 0) {
+            logStats("decoding");
+        }
+    }
+
+    private void logStats(String state) {
+        if (frameCount == 0) {
+            return;
+        }
+
+        Log.d(TAG,
+                String.format(Locale.US,
+                        "Decoder #%d (%s, hardware) %s: %d frames, average decode time %.1fms, max %dms",
+                        decoderId,
+                        codecName,
+                        state,
+                        frameCount,
+                        totalDecodeTimeMs / (double) frameCount,
+                        maxDecodeTimeMs));
+    }
+}
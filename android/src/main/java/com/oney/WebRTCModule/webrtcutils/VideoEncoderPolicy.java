@@ -0,0 +1,83 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import android.media.MediaCodecInfo;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Which encoders {@link PolicyVideoEncoderFactory} uses: hardware or software for each codec, which
+ * hardware (MediaCodec) encoders are allowed, and whether hardware encoders which fail to initialize
+ * fall back to software.
+ *
+ * The default policy matches {@link H264AndSoftwareVideoEncoderFactory}: H.264 in hardware and the
+ * rest in software.
+ */
+public class VideoEncoderPolicy {
+    public enum Preference {
+        HARDWARE,
+        SOFTWARE,
+    }
+
+    /**
+     * The preference of each codec, by name (e.g. "VP8"). Codecs which are not listed are encoded
+     * in software.
+     */
+    public final Map<String, Preference> preferences = new HashMap<>();
+
+    /**
+     * Prefixes of the names of the MediaCodec encoders which may be used (e.g. "c2.qti."). All
+     * may be if empty.
+     */
+    public final Set<String> allowedEncoders = new HashSet<>();
+
+    /**
+     * Prefixes of the names of the MediaCodec encoders which must not be used. Takes precedence
+     * over {@link #allowedEncoders}.
+     */
+    public final Set<String> deniedEncoders = new HashSet<>();
+
+    /**
+     * Whether to encode in software, for the codecs which have a software encoder, when the hardware
+     * encoder fails.
+     */
+    public boolean fallbackToSoftware = true;
+
+    public VideoEncoderPolicy() {
+        preferences.put("H264", Preference.HARDWARE);
+    }
+
+    public VideoEncoderPolicy setPreference(String codecName, Preference preference) {
+        preferences.put(codecName.toUpperCase(Locale.ROOT), preference);
+        return this;
+    }
+
+    boolean prefersHardware(String codecName) {
+        return preferences.get(codecName.toUpperCase(Locale.ROOT)) == Preference.HARDWARE;
+    }
+
+    boolean isEncoderAllowed(MediaCodecInfo info) {
+        String name = info.getName();
+
+        for (String prefix : deniedEncoders) {
+            if (name.startsWith(prefix)) {
+                return false;
+            }
+        }
+
+        if (allowedEncoders.isEmpty()) {
+            return true;
+        }
+
+        for (String prefix : allowedEncoders) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+}
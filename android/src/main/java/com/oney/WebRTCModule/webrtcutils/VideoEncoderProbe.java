@@ -0,0 +1,406 @@
+package com.oney.WebRTCModule.webrtcutils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.webrtc.EncodedImage;
+import org.webrtc.HardwareVideoEncoderFactory;
+import org.webrtc.JavaI420Buffer;
+import org.webrtc.VideoCodecInfo;
+import org.webrtc.VideoCodecStatus;
+import org.webrtc.VideoEncoder;
+import org.webrtc.VideoEncoderFactory;
+import org.webrtc.VideoFrame;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Measures how the hardware encoders of the device perform, by encoding a short sequence of
+ * synthetic frames with each of them. Whether a hardware encoder works, and how fast, depends on
+ * the chipset rather than on what it advertises, so the results are used to pick the encoders (see
+ * {@link H264AndSoftwareVideoEncoderFactory}).
+ *
+ * The probe takes a second or two, so it's only run once: the results are stored along with the
+ * build fingerprint, and measured again when the system is updated. A failure may be transient
+ * (e.g. the encoder being used by another app), so a failed encoder is probed again the next time,
+ * and only considered broken once it failed {@link #MAX_FAILURES} times in a row. Until then it's
+ * left out of {@link #getResults}, as if it wasn't probed.
+ */
+public class VideoEncoderProbe {
+    private static final String TAG = VideoEncoderProbe.class.getSimpleName();
+
+    private static final String PREFERENCES_NAME = "WebRTCModule.VideoEncoderProbe";
+    private static final String FINGERPRINT_KEY = "fingerprint";
+    private static final String RESULTS_KEY = "results";
+    private static final String DONE_KEY = "done";
+
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int FRAME_RATE = 30;
+    private static final int BITRATE_KBPS = 800;
+    private static final int FRAME_COUNT = 60;
+
+    /**
+     * The frame rate below which an encoder is considered too slow to be used.
+     */
+    private static final double MIN_FRAME_RATE = 30;
+
+    /**
+     * The number of frames submitted to the encoder without waiting for them to be encoded. Hardware
+     * encoders work on several frames at once, like they do during a call, and too few pending
+     * frames would cap the measured frame rate at MAX_PENDING_FRAMES / latency.
+     */
+    private static final int MAX_PENDING_FRAMES = 8;
+
+    /**
+     * The number of probes in a row an encoder has to fail to be considered broken.
+     */
+    private static final int MAX_FAILURES = 3;
+
+    /**
+     * Time, in milliseconds, after which a frame which wasn't encoded fails the probe.
+     */
+    private static final long FRAME_TIMEOUT = 1000;
+
+    /**
+     * How an encoder performed.
+     */
+    public static final class Result {
+        /**
+         * Whether the encoder encoded all the frames.
+         */
+        public final boolean success;
+
+        /**
+         * The number of frames encoded per second.
+         */
+        public final double framesPerSecond;
+
+        /**
+         * The average time, in milliseconds, from a frame being submitted to it being encoded.
+         */
+        public final double averageLatencyMs;
+
+        /**
+         * The number of probes in a row the encoder failed, on this build.
+         */
+        public final int failures;
+
+        Result(boolean success, double framesPerSecond, double averageLatencyMs, int failures) {
+            this.success = success;
+            this.framesPerSecond = framesPerSecond;
+            this.averageLatencyMs = averageLatencyMs;
+            this.failures = failures;
+        }
+
+        static Result failed(int failures) {
+            return new Result(false, 0, 0, failures);
+        }
+
+        /**
+         * Whether the encoder needs to be probed again.
+         */
+        boolean isRetryable() {
+            return !success && failures < MAX_FAILURES;
+        }
+
+        /**
+         * Whether the encoder worked, fast enough to be used.
+         */
+        public boolean isUsable() {
+            return success && framesPerSecond >= MIN_FRAME_RATE;
+        }
+
+        @Override
+        public String toString() {
+            return success ? String.format(Locale.US, "%.1f fps, %.1fms latency", framesPerSecond, averageLatencyMs)
+                           : "failed " + failures + " time(s)";
+        }
+    }
+
+    private final SharedPreferences preferences;
+
+    /**
+     * All the results so far, including the failures which will be retried.
+     */
+    @Nullable
+    private volatile Map<String, Result> results;
+
+    /**
+     * Whether all the encoders were probed, and none needs to be again.
+     */
+    private volatile boolean done;
+
+    public VideoEncoderProbe(Context context) {
+        this.preferences = context.getApplicationContext().getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+        this.results = loadResults();
+        this.done = results != null && preferences.getBoolean(DONE_KEY, false);
+    }
+
+    /**
+     * Gets the results, mapped by {@link #getKey}. Encoders which failed, but are to be probed
+     * again, are left out.
+     *
+     * @return the results, or {@code null} if the encoders were not probed on this build yet.
+     */
+    @Nullable
+    public Map<String, Result> getResults() {
+        Map<String, Result> results = this.results;
+        if (results == null) {
+            return null;
+        }
+
+        Map<String, Result> finalResults = new HashMap<>();
+        for (Map.Entry<String, Result> entry : results.entrySet()) {
+            if (!entry.getValue().isRetryable()) {
+                finalResults.put(entry.getKey(), entry.getValue());
+            }
+        }
+
+        return Collections.unmodifiableMap(finalResults);
+    }
+
+    /**
+     * Whether {@link #run} has nothing left to probe on this build.
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Gets the key of the results of the given codec, which tells the H.264 profiles apart.
+     */
+    public static String getKey(VideoCodecInfo codecInfo) {
+        String profileLevel = codecInfo.params.get(VideoCodecInfo.H264_FMTP_PROFILE_LEVEL_ID);
+
+        return profileLevel == null ? codecInfo.name : codecInfo.name + "/" + profileLevel.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Probes the hardware encoders which were not probed on this build yet, or failed and are to be
+     * probed again. Blocks until it's done, must not be called on the UI thread.
+     *
+     * @param canContinue checked before each encoder, the probe stops (and resumes the next time)
+     *                    when it returns false, e.g. because a call started.
+     */
+    public void run(BooleanSupplier canContinue) {
+        if (done) {
+            return;
+        }
+
+        long start = SystemClock.elapsedRealtime();
+
+        // Without an EGL context the encoders take byte buffers, which the synthetic frames are.
+        VideoEncoderFactory factory = new HardwareVideoEncoderFactory(null, false, true);
+        Map<String, Result> previousResults = this.results != null ? this.results : Collections.emptyMap();
+        Map<String, Result> results = new HashMap<>();
+        boolean done = true;
+        int probed = 0;
+
+        for (VideoCodecInfo codecInfo : factory.getSupportedCodecs()) {
+            String key = getKey(codecInfo);
+
+            if (results.containsKey(key)) {
+                continue;
+            }
+
+            Result previous = previousResults.get(key);
+            if (previous != null && !previous.isRetryable()) {
+                results.put(key, previous);
+                continue;
+            }
+
+            if (!canContinue.getAsBoolean()) {
+                if (previous != null) {
+                    results.put(key, previous);
+                }
+                done = false;
+                continue;
+            }
+
+            Result result = probe(factory, codecInfo);
+            if (!result.success) {
+                result = Result.failed(previous != null ? previous.failures + 1 : 1);
+            }
+            results.put(key, result);
+            probed++;
+            Log.d(TAG, "Probed " + key + ": " + result);
+
+            if (result.isRetryable()) {
+                done = false;
+            }
+        }
+
+        this.results = Collections.unmodifiableMap(results);
+        this.done = done;
+        storeResults(results, done);
+
+        Log.d(TAG,
+                "Probed " + probed + " encoders in " + (SystemClock.elapsedRealtime() - start) + "ms"
+                        + (done ? "" : ", some remain to be probed"));
+    }
+
+    private static Result probe(VideoEncoderFactory factory, VideoCodecInfo codecInfo) {
+        VideoEncoder encoder = factory.createEncoder(codecInfo);
+        if (encoder == null) {
+            return Result.failed(1);
+        }
+
+        Semaphore pendingFrames = new Semaphore(MAX_PENDING_FRAMES);
+        AtomicLong encodedFrames = new AtomicLong();
+        AtomicLong totalLatencyNs = new AtomicLong();
+
+        VideoEncoder.Settings settings = new VideoEncoder.Settings(
+                1, WIDTH, HEIGHT, BITRATE_KBPS, FRAME_RATE, 1, false, new VideoEncoder.Capabilities(false));
+        VideoCodecStatus status = encoder.initEncode(settings, (frame, info) -> {
+            // The capture time of the synthetic frames is when they were submitted.
+            totalLatencyNs.addAndGet(System.nanoTime() - frame.captureTimeNs);
+            encodedFrames.incrementAndGet();
+            pendingFrames.release();
+        });
+
+        if (status != VideoCodecStatus.OK) {
+            Log.w(TAG, "Failed to initialize " + getKey(codecInfo) + ": " + status);
+            encoder.release();
+            return Result.failed(1);
+        }
+
+        boolean success = true;
+        long start = System.nanoTime();
+
+        try {
+            for (int i = 0; i < FRAME_COUNT; i++) {
+                if (!pendingFrames.tryAcquire(FRAME_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                    success = false;
+                    break;
+                }
+
+                VideoFrame frame = new VideoFrame(createFrameBuffer(i), 0, System.nanoTime());
+                EncodedImage.FrameType frameType =
+                        i == 0 ? EncodedImage.FrameType.VideoFrameKey : EncodedImage.FrameType.VideoFrameDelta;
+                status = encoder.encode(frame, new VideoEncoder.EncodeInfo(new EncodedImage.FrameType[] {frameType}));
+                frame.release();
+
+                if (status != VideoCodecStatus.OK) {
+                    success = false;
+                    break;
+                }
+            }
+
+            // Wait for the last frames.
+            if (success && !pendingFrames.tryAcquire(MAX_PENDING_FRAMES, FRAME_TIMEOUT, TimeUnit.MILLISECONDS)) {
+                success = false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            success = false;
+        } finally {
+            encoder.release();
+        }
+
+        long frames = encodedFrames.get();
+        if (!success || frames == 0) {
+            return Result.failed(1);
+        }
+
+        double elapsedSeconds = (System.nanoTime() - start) / 1e9;
+
+        return new Result(true, frames / elapsedSeconds, totalLatencyNs.get() / 1e6 / frames, 0);
+    }
+
+    /**
+     * Creates a frame with a moving gradient, so that the encoder has something to encode.
+     */
+    private static VideoFrame.Buffer createFrameBuffer(int index) {
+        JavaI420Buffer buffer = JavaI420Buffer.allocate(WIDTH, HEIGHT);
+
+        ByteBuffer dataY = buffer.getDataY();
+        int strideY = buffer.getStrideY();
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                dataY.put(y * strideY + x, (byte) (x + y + index * 4));
+            }
+        }
+
+        ByteBuffer dataU = buffer.getDataU();
+        ByteBuffer dataV = buffer.getDataV();
+        for (int i = dataU.position(); i < dataU.limit(); i++) {
+            dataU.put(i, (byte) 128);
+        }
+        for (int i = dataV.position(); i < dataV.limit(); i++) {
+            dataV.put(i, (byte) 128);
+        }
+
+        return buffer;
+    }
+
+    @Nullable
+    private Map<String, Result> loadResults() {
+        if (!Build.FINGERPRINT.equals(preferences.getString(FINGERPRINT_KEY, null))) {
+            return null;
+        }
+
+        try {
+            JSONObject json = new JSONObject(preferences.getString(RESULTS_KEY, "{}"));
+            Map<String, Result> results = new HashMap<>();
+
+            for (Iterator<String> keys = json.keys(); keys.hasNext();) {
+                String key = keys.next();
+                JSONObject result = json.getJSONObject(key);
+
+                results.put(key,
+                        new Result(result.getBoolean("success"),
+                                result.getDouble("framesPerSecond"),
+                                result.getDouble("averageLatencyMs"),
+                                result.optInt("failures", result.getBoolean("success") ? 0 : MAX_FAILURES)));
+            }
+
+            return Collections.unmodifiableMap(results);
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to load the results", e);
+            return null;
+        }
+    }
+
+    private void storeResults(Map<String, Result> results, boolean done) {
+        JSONObject json = new JSONObject();
+
+        try {
+            for (Map.Entry<String, Result> entry : results.entrySet()) {
+                Result result = entry.getValue();
+
+                json.put(entry.getKey(),
+                        new JSONObject()
+                                .put("success", result.success)
+                                .put("framesPerSecond", result.framesPerSecond)
+                                .put("averageLatencyMs", result.averageLatencyMs)
+                                .put("failures", result.failures));
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Failed to store the results", e);
+            return;
+        }
+
+        preferences.edit()
+                .putString(FINGERPRINT_KEY, Build.FINGERPRINT)
+                .putString(RESULTS_KEY, json.toString())
+                .putBoolean(DONE_KEY, done)
+                .apply();
+    }
+}
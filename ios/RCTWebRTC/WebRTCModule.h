@@ -17,10 +17,16 @@ static NSString *const kEventPeerConnectionDidOpenDataChannel = @"peerConnection
 static NSString *const kEventDataChannelDidChangeBufferedAmount = @"dataChannelDidChangeBufferedAmount";
 static NSString *const kEventDataChannelStateChanged = @"dataChannelStateChanged";
 static NSString *const kEventDataChannelReceiveMessage = @"dataChannelReceiveMessage";
+static NSString *const kEventDataChannelReceiveMessages = @"dataChannelReceiveMessages";
 static NSString *const kEventMediaStreamTrackMuteChanged = @"mediaStreamTrackMuteChanged";
+static NSString *const kEventMediaStreamTracksMuteChanged = @"mediaStreamTracksMuteChanged";
 static NSString *const kEventMediaStreamTrackEnded = @"mediaStreamTrackEnded";
+static NSString *const kEventMediaStreamTrackCaptureAdapted = @"mediaStreamTrackCaptureAdapted";
+static NSString *const kEventMediaStreamTrackVisibilityChanged = @"mediaStreamTrackVisibilityChanged";
+static NSString *const kEventMediaStreamTrackTargetResolutionChanged = @"mediaStreamTrackTargetResolutionChanged";
 static NSString *const kEventPeerConnectionOnRemoveTrack = @"peerConnectionOnRemoveTrack";
 static NSString *const kEventPeerConnectionOnTrack = @"peerConnectionOnTrack";
+static NSString *const kEventPeerConnectionStatsSampled = @"peerConnectionStatsSampled";
 
 @interface WebRTCModule : RCTEventEmitter<RCTBridgeModule>
 
@@ -117,10 +117,16 @@ RCT_EXPORT_MODULE();
         kEventDataChannelDidChangeBufferedAmount,
         kEventDataChannelStateChanged,
         kEventDataChannelReceiveMessage,
+        kEventDataChannelReceiveMessages,
         kEventMediaStreamTrackMuteChanged,
+        kEventMediaStreamTracksMuteChanged,
         kEventMediaStreamTrackEnded,
+        kEventMediaStreamTrackCaptureAdapted,
+        kEventMediaStreamTrackVisibilityChanged,
+        kEventMediaStreamTrackTargetResolutionChanged,
         kEventPeerConnectionOnRemoveTrack,
-        kEventPeerConnectionOnTrack
+        kEventPeerConnectionOnTrack,
+        kEventPeerConnectionStatsSampled
     ];
 }
 
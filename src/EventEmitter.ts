@@ -18,11 +18,17 @@ const NATIVE_EVENTS = [
     'peerConnectionDidOpenDataChannel',
     'peerConnectionOnRemoveTrack',
     'peerConnectionOnTrack',
+    'peerConnectionStatsSampled',
     'dataChannelStateChanged',
     'dataChannelReceiveMessage',
+    'dataChannelReceiveMessages',
     'dataChannelDidChangeBufferedAmount',
     'mediaStreamTrackMuteChanged',
+    'mediaStreamTracksMuteChanged',
     'mediaStreamTrackEnded',
+    'mediaStreamTrackCaptureAdapted',
+    'mediaStreamTrackVisibilityChanged',
+    'mediaStreamTrackTargetResolutionChanged',
 ];
 
 const eventEmitter = new EventEmitter();
@@ -40,6 +40,21 @@ class MediaDevices extends EventTarget<MediaDevicesEventMap> {
     getUserMedia(constraints: Constraints) {
         return getUserMedia(constraints);
     }
+
+    /**
+     * Non standard: gets the cameras ready ahead of {@code getUserMedia}, so
+     * that it and switching between cameras complete faster. The cameras are
+     * not opened. Android only, it resolves right away elsewhere.
+     *
+     * @returns {Promise}
+     */
+    _prewarm(): Promise<void> {
+        if (typeof WebRTCModule.prewarmMediaDevices !== 'function') {
+            return Promise.resolve();
+        }
+
+        return WebRTCModule.prewarmMediaDevices();
+    }
 }
 
 /**
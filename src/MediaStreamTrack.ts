@@ -36,6 +36,9 @@ type MediaStreamTrackEventMap = {
     ended: Event<'ended'>;
     mute: Event<'mute'>;
     unmute: Event<'unmute'>;
+    captureadapted: Event<'captureadapted'>;
+    visibilitychange: Event<'visibilitychange'>;
+    targetresolutionchange: Event<'targetresolutionchange'>;
 }
 
 export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventMap> {
@@ -43,6 +46,8 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
     _enabled: boolean;
     _settings: MediaTrackSettings;
     _muted: boolean;
+    _visible: boolean;
+    _targetResolution: { width: number, height: number } | null;
     _peerConnectionId: number;
     _readyState: MediaStreamTrackState;
 
@@ -58,6 +63,8 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
         this._enabled = info.enabled;
         this._settings = info.settings || {};
         this._muted = false;
+        this._visible = true;
+        this._targetResolution = null;
         this._peerConnectionId = info.peerConnectionId;
         this._readyState = info.readyState;
 
@@ -139,6 +146,50 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
         WebRTCModule.mediaStreamTrackSetVideoEffect(this.id, name);
     }
 
+    /**
+     * Custom API for applying a chain of video effects, in the given order,
+     * each one processing the output of the previous one. An empty list
+     * removes all the effects. Android only.
+     *
+     * With `async`, the effects are applied on a separate thread so slow ones
+     * don't stall the capture. Frames captured while one is being processed
+     * replace each other, only the latest one is processed next. If
+     * `passthroughTimeout` (ms) is set, frames are sent without effects while
+     * processing a frame takes longer than that.
+     *
+     * @param names the names the effects were registered with.
+     * @param options whether to process asynchronously and the passthrough timeout.
+     */
+    _setVideoEffects(names: string[], options: { async?: boolean, passthroughTimeout?: number } = {}) {
+        if (this.remote) {
+            throw new Error('Not implemented for remote tracks');
+        }
+
+        if (this.kind !== 'video') {
+            throw new Error('Only implemented for video tracks');
+        }
+
+        if (typeof WebRTCModule.mediaStreamTrackSetVideoEffects !== 'function') {
+            throw new Error('Not implemented on this platform');
+        }
+
+        WebRTCModule.mediaStreamTrackSetVideoEffects(this.id, names, options);
+    }
+
+    /**
+     * Custom API for getting the counters of the video effects of this track:
+     * the number of frames processed, dropped and passed through without
+     * effects, and the average and maximum processing time (ms). Resolves
+     * with null if the track has no video effects. Android only.
+     */
+    _getVideoEffectStats(): Promise<object | null> {
+        if (typeof WebRTCModule.mediaStreamTrackGetVideoEffectStats !== 'function') {
+            return Promise.resolve(null);
+        }
+
+        return WebRTCModule.mediaStreamTrackGetVideoEffectStats(this.id);
+    }
+
     /**
      * Internal function which is used to set the muted state on remote tracks and
      * emit the mute / unmute event.
@@ -154,6 +205,43 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
         this.dispatchEvent(new Event(muted ? 'mute' : 'unmute'));
     }
 
+    /**
+     * Internal function which is used to set whether remote tracks are
+     * rendered by any RTCView and emit the visibilitychange event. Non
+     * standard, Android only: see the autoPause prop of RTCView.
+     *
+     * @param visible Whether the track is rendered by any RTCView.
+     */
+    _setVisibleInternal(visible: boolean) {
+        if (!this.remote) {
+            throw new Error('Track is not remote!');
+        }
+
+        if (this._visible === visible) {
+            return;
+        }
+
+        this._visible = visible;
+        this.dispatchEvent(new Event('visibilitychange'));
+    }
+
+    /**
+     * Internal function which is used to set the largest resolution at which
+     * the RTCViews render remote tracks and emit the targetresolutionchange
+     * event. Non standard, Android only.
+     *
+     * @param width The width in pixels.
+     * @param height The height in pixels.
+     */
+    _setTargetResolutionInternal(width: number, height: number) {
+        if (!this.remote) {
+            throw new Error('Track is not remote!');
+        }
+
+        this._targetResolution = { width, height };
+        this.dispatchEvent(new Event('targetresolutionchange'));
+    }
+
     /**
      * Custom API for setting the volume on an individual audio track.
      *
@@ -215,6 +303,17 @@ export default class MediaStreamTrack extends EventTarget<MediaStreamTrackEventM
 
             this.dispatchEvent(new Event('ended'));
         });
+
+        addListener(this, 'mediaStreamTrackCaptureAdapted', (ev: any) => {
+            if (ev.trackId !== this.id) {
+                return;
+            }
+
+            log.debug(`${this.id} mediaStreamTrackCaptureAdapted level: ${ev.level} reason: ${ev.reason}`);
+            this._settings = ev.settings;
+
+            this.dispatchEvent(new Event('captureadapted'));
+        });
     }
 
     release(): void {
@@ -235,3 +334,6 @@ const proto = MediaStreamTrack.prototype;
 defineEventAttribute(proto, 'ended');
 defineEventAttribute(proto, 'mute');
 defineEventAttribute(proto, 'unmute');
+defineEventAttribute(proto, 'captureadapted');
+defineEventAttribute(proto, 'visibilitychange');
+defineEventAttribute(proto, 'targetresolutionchange');
@@ -3,13 +3,21 @@ import { EventTarget, defineEventAttribute } from 'event-target-shim/index';
 import { NativeModules } from 'react-native';
 
 import { addListener, removeListener } from './EventEmitter';
+import Logger from './Logger';
 import MessageEvent from './MessageEvent';
 import RTCDataChannelEvent from './RTCDataChannelEvent';
 
+const log = new Logger('pc');
 const { WebRTCModule } = NativeModules;
 
 type RTCDataChannelState = 'connecting' | 'open' | 'closing' | 'closed';
 
+type RTCDataChannelMessageBatching = {
+    maxMessages?: number,
+    maxBytes?: number,
+    interval?: number
+};
+
 type DataChannelEventMap = {
     bufferedamountlow: RTCDataChannelEvent<'bufferedamountlow'>;
     close: RTCDataChannelEvent<'close'>;
@@ -115,6 +123,27 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
         WebRTCModule.dataChannelSend(this._peerConnectionId, this._reactTag, base64data, 'binary');
     }
 
+    /**
+     * Custom API for batching the delivery of received messages. While enabled,
+     * messages are queued natively and delivered in bulk once `maxMessages`
+     * messages or `maxBytes` bytes have been queued, or `interval` milliseconds
+     * after the first one was queued, whichever happens first. A 'message' event
+     * is still dispatched for every message, in order.
+     *
+     * Android only.
+     *
+     * @param options The batching options, or null to disable batching.
+     */
+    _setMessageBatching(options: RTCDataChannelMessageBatching | null): void {
+        if (typeof WebRTCModule.dataChannelSetMessageBatching !== 'function') {
+            log.warn(`${this._reactTag} message batching is not supported on this platform`);
+
+            return;
+        }
+
+        WebRTCModule.dataChannelSetMessageBatching(this._peerConnectionId, this._reactTag, options);
+    }
+
     close(): void {
         if (this._readyState === 'closing' || this._readyState === 'closed') {
             return;
@@ -154,13 +183,17 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
                 return;
             }
 
-            let data = ev.data;
+            this._dispatchMessage(ev);
+        });
 
-            if (ev.type === 'binary') {
-                data = base64.toByteArray(ev.data).buffer;
+        addListener(this, 'dataChannelReceiveMessages', (ev: any) => {
+            if (ev.reactTag !== this._reactTag) {
+                return;
             }
 
-            this.dispatchEvent(new MessageEvent('message', { data }));
+            for (const message of ev.messages) {
+                this._dispatchMessage(message);
+            }
         });
 
         addListener(this, 'dataChannelDidChangeBufferedAmount', (ev: any) => {
@@ -175,6 +208,16 @@ export default class RTCDataChannel extends EventTarget<DataChannelEventMap> {
             }
         });
     }
+
+    _dispatchMessage(message: { type: string, data: string }): void {
+        let data: string | ArrayBuffer = message.data;
+
+        if (message.type === 'binary') {
+            data = base64.toByteArray(message.data).buffer;
+        }
+
+        this.dispatchEvent(new MessageEvent('message', { data }));
+    }
 }
 
 /**
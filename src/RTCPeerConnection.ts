@@ -16,6 +16,7 @@ import RTCRtpSendParameters from './RTCRtpSendParameters';
 import RTCRtpSender from './RTCRtpSender';
 import RTCRtpTransceiver from './RTCRtpTransceiver';
 import RTCSessionDescription, { RTCSessionDescriptionInit } from './RTCSessionDescription';
+import RTCStatsEvent from './RTCStatsEvent';
 import RTCTrackEvent from './RTCTrackEvent';
 import * as RTCUtil from './RTCUtil';
 
@@ -60,6 +61,12 @@ type RTCConfiguration = {
     rtcpMuxPolicy?: 'negotiate' | 'require'
 };
 
+type RTCStatsSamplerOptions = {
+    interval?: number,
+    types?: string[],
+    members?: string[]
+};
+
 type RTCPeerConnectionEventMap = {
     connectionstatechange: Event<'connectionstatechange'>
     icecandidate: RTCIceCandidateEvent<'icecandidate'>
@@ -71,10 +78,64 @@ type RTCPeerConnectionEventMap = {
     datachannel: RTCDataChannelEvent<'datachannel'>
     track: RTCTrackEvent<'track'>
     error: Event<'error'>
+    stats: RTCStatsEvent<'stats'>
 }
 
 let nextPeerConnectionId = 0;
 
+/**
+ * Sanitizes the ICE servers of a configuration, in place.
+ */
+function sanitizeConfiguration(configuration: RTCConfiguration): void {
+    const servers = configuration?.iceServers ?? [];
+
+    for (const server of servers) {
+        let urls = server.url || server.urls;
+
+        delete server.url;
+        delete server.urls;
+
+        if (!urls) {
+            continue;
+        }
+
+        if (!Array.isArray(urls)) {
+            urls = [ urls ];
+        }
+
+        // Native WebRTC does case sensitive parsing.
+        server.urls = urls.map(url => url.toLowerCase());
+    }
+
+    // Filter out bogus servers.
+    configuration.iceServers = servers.filter(s => s.urls);
+}
+
+/**
+ * A configuration registered with RTCPeerConnection._registerConfiguration.
+ * Non standard.
+ */
+export class RTCConfigurationHandle {
+    _configuration: RTCConfiguration;
+    _id: number | null;
+
+    constructor(configuration: RTCConfiguration, id: number | null) {
+        this._configuration = configuration;
+        this._id = id;
+    }
+
+    /**
+     * Releases the native copy of the configuration. Peer connections created
+     * with it are not affected, but no more can be.
+     */
+    release(): void {
+        if (this._id !== null) {
+            WebRTCModule.peerConnectionUnregisterConfiguration(this._id);
+            this._id = null;
+        }
+    }
+}
+
 export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEventMap> {
     localDescription: RTCSessionDescription | null = null;
     remoteDescription: RTCSessionDescription | null = null;
@@ -87,39 +148,30 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
     _transceivers: { order: number, transceiver: RTCRtpTransceiver }[];
     _remoteStreams: Map<string, MediaStream>;
     _pendingTrackEvents: any[];
+    _statsSnapshot: Map<string, any> | null = null;
 
-    constructor(configuration?: RTCConfiguration) {
+    constructor(configuration?: RTCConfiguration | RTCConfigurationHandle) {
         super();
 
         this._pcId = nextPeerConnectionId++;
 
-        // Sanitize ICE servers.
-        if (configuration) {
-            const servers = configuration?.iceServers ?? [];
-
-            for (const server of servers) {
-                let urls = server.url || server.urls;
-
-                delete server.url;
-                delete server.urls;
-
-                if (!urls) {
-                    continue;
-                }
-
-                if (!Array.isArray(urls)) {
-                    urls = [ urls ];
-                }
+        let initialized;
 
-                // Native WebRTC does case sensitive parsing.
-                server.urls = urls.map(url => url.toLowerCase());
+        if (configuration instanceof RTCConfigurationHandle) {
+            if (configuration._id !== null) {
+                initialized = WebRTCModule.peerConnectionInitWithConfiguration(configuration._id, this._pcId);
+            } else {
+                initialized = WebRTCModule.peerConnectionInit(configuration._configuration, this._pcId);
+            }
+        } else {
+            if (configuration) {
+                sanitizeConfiguration(configuration);
             }
 
-            // Filter out bogus servers.
-            configuration.iceServers = servers.filter(s => s.urls);
+            initialized = WebRTCModule.peerConnectionInit(configuration, this._pcId);
         }
 
-        if (!WebRTCModule.peerConnectionInit(configuration, this._pcId)) {
+        if (!initialized) {
             throw new Error('Failed to initialize PeerConnection, check the native logs!');
         }
 
@@ -176,7 +228,40 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
         return sdpInfo;
     }
 
-    setConfiguration(configuration): void {
+    /**
+     * Registers a configuration to create (or reconfigure) peer connections
+     * with. The configuration is parsed once, rather than by each peer
+     * connection, which helps when opening many with the same configuration
+     * (e.g. one per participant of a mesh call). Release the handle once done
+     * with it. Non standard, Android only: elsewhere the handle just holds the
+     * configuration.
+     *
+     * @param configuration The configuration, which must not be modified
+     * afterwards.
+     */
+    static _registerConfiguration(configuration: RTCConfiguration): RTCConfigurationHandle {
+        sanitizeConfiguration(configuration);
+
+        if (typeof WebRTCModule.peerConnectionRegisterConfiguration !== 'function') {
+            return new RTCConfigurationHandle(configuration, null);
+        }
+
+        return new RTCConfigurationHandle(
+            configuration,
+            WebRTCModule.peerConnectionRegisterConfiguration(configuration));
+    }
+
+    setConfiguration(configuration: RTCConfiguration | RTCConfigurationHandle): void {
+        if (configuration instanceof RTCConfigurationHandle) {
+            if (configuration._id !== null) {
+                WebRTCModule.peerConnectionSetRegisteredConfiguration(configuration._id, this._pcId);
+            } else {
+                WebRTCModule.peerConnectionSetConfiguration(configuration._configuration, this._pcId);
+            }
+
+            return;
+        }
+
         WebRTCModule.peerConnectionSetConfiguration(configuration, this._pcId);
     }
 
@@ -485,7 +570,8 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             return;
         }
 
-        // Blocking!
+        // Blocking! The async variant would let a following (synchronous)
+        // addTrack with the same track overtake it.
         WebRTCModule.peerConnectionRemoveTrack(this._pcId, sender.id);
 
         existingSender._track = null;
@@ -530,6 +616,75 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
         }
     }
 
+    /**
+     * Non standard: gets the stats of the whole peer connection, like getStats()
+     * without a selector, but only the stats members which changed since the
+     * previous call cross the bridge. The stats are merged into the snapshot
+     * kept by this peer connection, so there should be a single consumer.
+     * Falls back to a full getStats() where there is no native support (iOS).
+     *
+     * @param reset - discard the snapshot and get the full stats.
+     */
+    async _getStatsDelta(reset = false): Promise<Map<string, any>> {
+        log.debug(`${this._pcId} getStatsDelta`);
+
+        if (typeof WebRTCModule.peerConnectionGetStatsDelta !== 'function') {
+            return this.getStats();
+        }
+
+        const full = reset || !this._statsSnapshot;
+        const data = await WebRTCModule.peerConnectionGetStatsDelta(this._pcId, full);
+        const { changed, removed } = JSON.parse(data);
+
+        // Copy, the Map returned by the previous call is the caller's now.
+        const snapshot = full ? new Map() : new Map(this._statsSnapshot);
+
+        for (const id of removed) {
+            snapshot.delete(id);
+        }
+
+        for (const [ id, stats ] of changed) {
+            const previous = snapshot.get(id);
+
+            snapshot.set(id, previous ? { ...previous, ...stats } : stats);
+        }
+
+        this._statsSnapshot = snapshot;
+
+        return snapshot;
+    }
+
+    /**
+     * Non standard: starts sampling the stats of this peer connection natively,
+     * every report is delivered as a `stats` event. Only the stats of the given
+     * types and the given members of each are included, when specified.
+     * While the app is in the background the stats are sampled less often.
+     * Android only.
+     *
+     * @param options - the sampling interval (ms, 1000 by default) and the
+     * types and members of the stats to include.
+     */
+    _startStatsSampler(options: RTCStatsSamplerOptions = {}): void {
+        if (typeof WebRTCModule.peerConnectionStartStatsSampler !== 'function') {
+            log.warn(`${this._pcId} stats sampler is not supported on this platform`);
+
+            return;
+        }
+
+        WebRTCModule.peerConnectionStartStatsSampler(this._pcId, options);
+    }
+
+    /**
+     * Non standard: stops sampling the stats of this peer connection.
+     */
+    _stopStatsSampler(): void {
+        if (typeof WebRTCModule.peerConnectionStopStatsSampler !== 'function') {
+            return;
+        }
+
+        WebRTCModule.peerConnectionStopStatsSampler(this._pcId);
+    }
+
     getTransceivers(): RTCRtpTransceiver[] {
         return this._transceivers.map(e => e.transceiver);
     }
@@ -599,6 +754,14 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
             }
         });
 
+        addListener(this, 'peerConnectionStatsSampled', (ev: any) => {
+            if (ev.pcId !== this._pcId) {
+                return;
+            }
+
+            this.dispatchEvent(new RTCStatsEvent('stats', { report: new Map(JSON.parse(ev.stats)) }));
+        });
+
         addListener(this, 'peerConnectionSignalingStateChanged', (ev: any) => {
             if (ev.pcId !== this._pcId) {
                 return;
@@ -725,6 +888,51 @@ export default class RTCPeerConnection extends EventTarget<RTCPeerConnectionEven
                 track._setMutedInternal(ev.muted);
             }
         });
+
+        addListener(this, 'mediaStreamTrackVisibilityChanged', (ev: any) => {
+            if (ev.pcId !== this._pcId) {
+                return;
+            }
+
+            const [
+                track
+            ] = this.getReceivers().map(r => r.track).filter(t => t?.id === ev.trackId);
+
+            if (track) {
+                track._setVisibleInternal(ev.visible);
+            }
+        });
+
+        addListener(this, 'mediaStreamTrackTargetResolutionChanged', (ev: any) => {
+            if (ev.pcId !== this._pcId) {
+                return;
+            }
+
+            const [
+                track
+            ] = this.getReceivers().map(r => r.track).filter(t => t?.id === ev.trackId);
+
+            if (track) {
+                track._setTargetResolutionInternal(ev.width, ev.height);
+            }
+        });
+
+        // Same as above, for all the tracks which changed since the last check (Android).
+        addListener(this, 'mediaStreamTracksMuteChanged', (ev: any) => {
+            for (const change of ev.changes) {
+                if (change.pcId !== this._pcId) {
+                    continue;
+                }
+
+                const [
+                    track
+                ] = this.getReceivers().map(r => r.track).filter(t => t?.id === change.trackId);
+
+                if (track) {
+                    track._setMutedInternal(change.muted);
+                }
+            }
+        });
     }
 
     /**
@@ -831,3 +1039,4 @@ defineEventAttribute(proto, 'signalingstatechange');
 defineEventAttribute(proto, 'datachannel');
 defineEventAttribute(proto, 'track');
 defineEventAttribute(proto, 'error');
+defineEventAttribute(proto, 'stats');
@@ -6,6 +6,16 @@ import RTCRtpSendParameters, { RTCRtpSendParametersInit } from './RTCRtpSendPara
 
 const { WebRTCModule } = NativeModules;
 
+export type RTCCaptureAdaptationOptions = {
+    interval?: number;
+    downgradeSamples?: number;
+    upgradeSamples?: number;
+    maxEncodeUsage?: number;
+    maxDropRatio?: number;
+    adaptToBandwidth?: boolean;
+    minScale?: number;
+    minFrameRate?: number;
+};
 
 export default class RTCRtpSender {
     _id: string;
@@ -68,6 +78,39 @@ export default class RTCRtpSender {
         );
     }
 
+    /**
+     * Non standard: lets the capture resolution and frame rate of the (local,
+     * video) track of this sender follow what the encoder and the network can
+     * keep up with, going down when they are overloaded and back up towards
+     * the track's constraints when they aren't anymore. The track fires a
+     * `captureadapted` event and its settings change every time. Android only.
+     *
+     * @param options - how often to sample the stats (ms, 2000 by default),
+     * how many consecutive overloaded / underused samples step the format
+     * down / up (2 / 5), the maximum encode time as a fraction of the frame
+     * interval (0.8) and fraction of dropped frames (0.1), whether to adapt
+     * to bandwidth limitations too (true), and the minimum resolution scale
+     * (0.25) and frame rate (10).
+     */
+    _startCaptureAdaptation(options: RTCCaptureAdaptationOptions = {}): void {
+        if (typeof WebRTCModule.senderStartCaptureAdaptation !== 'function') {
+            return;
+        }
+
+        WebRTCModule.senderStartCaptureAdaptation(this._peerConnectionId, this._id, options);
+    }
+
+    /**
+     * Non standard: stops adapting the capture format, it's left as is.
+     */
+    _stopCaptureAdaptation(): void {
+        if (typeof WebRTCModule.senderStopCaptureAdaptation !== 'function') {
+            return;
+        }
+
+        WebRTCModule.senderStopCaptureAdaptation(this._peerConnectionId, this._id);
+    }
+
     get track() {
         return this._track;
     }
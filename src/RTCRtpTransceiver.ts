@@ -1,9 +1,11 @@
 import { NativeModules } from 'react-native';
 
+import Logger from './Logger';
 import RTCRtpCodecCapability from './RTCRtpCodecCapability';
 import RTCRtpReceiver from './RTCRtpReceiver';
 import RTCRtpSender from './RTCRtpSender';
 
+const log = new Logger('pc');
 const { WebRTCModule } = NativeModules;
 
 export default class RTCRtpTransceiver {
@@ -91,11 +93,15 @@ export default class RTCRtpTransceiver {
     }
 
     setCodecPreferences(codecs: RTCRtpCodecCapability[]) {
-        WebRTCModule.transceiverSetCodecPreferences(
-            this._peerConnectionId,
-            this.sender.id,
-            codecs
-        );
+        // Nothing to wait for, so don't block the JS thread where possible.
+        if (typeof WebRTCModule.transceiverSetCodecPreferencesAsync !== 'function') {
+            WebRTCModule.transceiverSetCodecPreferences(this._peerConnectionId, this.sender.id, codecs);
+
+            return;
+        }
+
+        WebRTCModule.transceiverSetCodecPreferencesAsync(this._peerConnectionId, this.sender.id, codecs)
+            .catch(e => log.warn(`${this._peerConnectionId} setCodecPreferences failed: ${e.message}`));
     }
 
     _setStopped() {
@@ -0,0 +1,23 @@
+import { Event } from 'event-target-shim/index';
+
+type STATS_EVENTS = 'stats';
+
+interface IRTCStatsEventInitDict extends Event.EventInit {
+    report: Map<string, any>;
+}
+
+/**
+ * @eventClass
+ * Non standard: this event is fired whenever the stats sampler of a
+ * RTCPeerConnection has a new report, see RTCPeerConnection._startStatsSampler.
+ * @param {STATS_EVENTS} type - The type of event.
+ * @param {IRTCStatsEventInitDict} eventInitDict - The event init properties.
+ */
+export default class RTCStatsEvent<TEventType extends STATS_EVENTS> extends Event<TEventType> {
+    /** @eventProperty */
+    report: Map<string, any>;
+    constructor(type: TEventType, eventInitDict: IRTCStatsEventInitDict) {
+        super(type, eventInitDict);
+        this.report = eventInitDict.report;
+    }
+}
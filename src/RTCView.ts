@@ -61,6 +61,44 @@ export interface RTCVideoViewProps extends ViewProps {
    */
   zOrder?: number;
 
+  /**
+   * Indicates whether the rendering should stop while the view is not
+   * visible: scrolled out, hidden, or when the app is in the background. The
+   * video track stops delivering frames to the view until it's visible again.
+   * When no view renders a remote track anymore, the track fires a
+   * visibilitychange event (and its _visible property is false), which can be
+   * forwarded to the sender so that it stops sending the video.
+   *
+   * Android only.
+   *
+   * autoPause: boolean
+   */
+  autoPause?: boolean;
+
+  /**
+   * The maximum rate, in frames per second, at which the video is rendered.
+   * Frames above it are dropped before being drawn, which is useful for views
+   * (e.g. small tiles) which don't need the full frame rate.
+   *
+   * Android only.
+   *
+   * maxFps: number
+   */
+  maxFps?: number;
+
+  /**
+   * The maximum resolution, in pixels, at which the video is rendered. When
+   * the view is larger, the video is rendered at this resolution and scaled up
+   * to the size of the view, which caps the rendering cost.
+   *
+   * Android only.
+   *
+   * maxRenderResolution: { width?: number, height?: number }
+   */
+  maxRenderResolution?: {
+    width?: number;
+    height?: number;
+  };
 
   /**
    * Picture in picture options for this view. Disabled if not supplied.